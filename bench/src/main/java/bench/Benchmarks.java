@@ -0,0 +1,38 @@
+package bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line options,
+ * but writes results as JSON to jmh-result.json unless told otherwise, so
+ * runs can be compared to catch regressions.
+ *
+ * Inputs are read from the directory named by the bench.data system property
+ * (default ../data, i.e. running from the bench directory). For example:
+ *
+ *   mvn package
+ *   java -jar target/benchmarks.jar
+ *   java -jar target/benchmarks.jar SearchBenchmark -p input=1GB -rff search.json
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+
+        if (!commandLine.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            builder.result("jmh-result.json");
+        }
+
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,26 @@
+package bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts input bytes and the compressed bytes they produced. Both are reported
+ * as rates, so "bytes" gives throughput and compressedBytes / bytes gives the
+ * compression ratio.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class CompressionCounter {
+
+    public long bytes;
+    public long compressedBytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        bytes = 0;
+        compressedBytes = 0;
+    }
+}
@@ -0,0 +1,77 @@
+package bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Huffman tree construction, encode and decode throughput. The encoder
+ * produces a String of '0'/'1' characters, about 16 bytes of heap per input
+ * byte, so the synthetic inputs stop at 64MB by default; larger sizes can be
+ * passed with -p input=... given enough heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class HuffmanBenchmark {
+
+    @Param({"test1.txt", "test2.txt", "test3.txt", "test4.txt", "1MB", "64MB"})
+    public String input;
+
+    private String text;
+    private String encoded;
+    private byte[] packed;
+
+    @Setup
+    public void setup() throws Throwable {
+        text = Inputs.load(input);
+        // The coder keeps its tree in static fields, set up once for encode/decode
+        Targets.HUFFMAN_CONSTRUCT_TREE.invoke(text);
+        encoded = (String) Targets.HUFFMAN_ENCODE.invokeExact(text);
+        packed = (byte[]) Targets.HUFFMAN_ENCODE_PACKED.invokeExact(text);
+    }
+
+    @Benchmark
+    public Map<?, ?> buildTree(ByteCounter counter) throws Throwable {
+        counter.bytes += text.length();
+        return (Map<?, ?>) Targets.HUFFMAN_CONSTRUCT_TREE.invokeExact(text);
+    }
+
+    @Benchmark
+    public String encode(ByteCounter counter) throws Throwable {
+        counter.bytes += text.length();
+        return (String) Targets.HUFFMAN_ENCODE.invokeExact(text);
+    }
+
+    @Benchmark
+    public String decode(ByteCounter counter) throws Throwable {
+        counter.bytes += text.length();
+        return (String) Targets.HUFFMAN_DECODE.invokeExact(encoded);
+    }
+
+    @Benchmark
+    public byte[] encodePacked(ByteCounter counter) throws Throwable {
+        counter.bytes += text.length();
+        return (byte[]) Targets.HUFFMAN_ENCODE_PACKED.invokeExact(text);
+    }
+
+    @Benchmark
+    public String decodePacked(ByteCounter counter) throws Throwable {
+        counter.bytes += text.length();
+        return (String) Targets.HUFFMAN_DECODE_PACKED.invokeExact(packed);
+    }
+}
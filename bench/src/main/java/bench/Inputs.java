@@ -0,0 +1,65 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Benchmark inputs. A name ending in .txt is one of the shipped data files;
+ * a size such as 1MB, 64MB or 1GB is synthetic text of that many characters,
+ * made of words drawn at random (from a fixed seed) from the data files.
+ */
+final class Inputs {
+
+    static final Path DATA_DIR = Paths.get(System.getProperty("bench.data", "../data"));
+
+    private Inputs() {
+    }
+
+    static String load(String name) throws IOException {
+        if (name.endsWith(".txt")) {
+            return new String(Files.readAllBytes(DATA_DIR.resolve(name)), StandardCharsets.UTF_8);
+        }
+        return synthetic(parseSize(name));
+    }
+
+    static int parseSize(String size) {
+        long multiplier;
+        if (size.endsWith("KB")) {
+            multiplier = 1L << 10;
+        } else if (size.endsWith("MB")) {
+            multiplier = 1L << 20;
+        } else if (size.endsWith("GB")) {
+            multiplier = 1L << 30;
+        } else {
+            throw new IllegalArgumentException("Unknown input " + size);
+        }
+
+        long bytes = Long.parseLong(size.substring(0, size.length() - 2)) * multiplier;
+        if (bytes > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Input too large for a String: " + size);
+        }
+        return (int) bytes;
+    }
+
+    private static String synthetic(int length) throws IOException {
+        StringBuilder corpus = new StringBuilder();
+        for (int i = 1; i <= 4; i++) {
+            corpus.append(new String(Files.readAllBytes(DATA_DIR.resolve("test" + i + ".txt")),
+                                     StandardCharsets.UTF_8)).append(' ');
+        }
+        String[] words = corpus.toString().trim().split("\\s+");
+
+        Random random = new Random(261);
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            text.append(words[random.nextInt(words.length)]);
+            text.append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lempel-Ziv compress and decompress throughput, reported as input bytes per
+ * second, for both the text token format and the binary one. Binary
+ * decompression writes into a preallocated array.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class LempelZivBenchmark {
+
+    // No 1GB input: its text token form would not fit in a String
+    @Param({"test1.txt", "test2.txt", "test3.txt", "test4.txt", "1MB", "64MB"})
+    public String input;
+
+    private String text;
+    private String compressed;
+    private byte[] data;
+    private byte[] binary;
+    private byte[] output;
+
+    @Setup
+    public void setup() throws Throwable {
+        text = Inputs.load(input);
+        compressed = (String) Targets.LZ_COMPRESS.invokeExact(text);
+        data = text.getBytes(StandardCharsets.UTF_8);
+        binary = (byte[]) Targets.LZ_COMPRESS_BINARY.invokeExact(data);
+        output = new byte[data.length];
+    }
+
+    @Benchmark
+    public String compress(ByteCounter counter) throws Throwable {
+        counter.bytes += text.length();
+        return (String) Targets.LZ_COMPRESS.invokeExact(text);
+    }
+
+    @Benchmark
+    public String decompress(ByteCounter counter) throws Throwable {
+        counter.bytes += text.length();
+        return (String) Targets.LZ_DECOMPRESS.invokeExact(compressed);
+    }
+
+    @Benchmark
+    public byte[] compressBinary(ByteCounter counter) throws Throwable {
+        counter.bytes += data.length;
+        return (byte[]) Targets.LZ_COMPRESS_BINARY.invokeExact(data);
+    }
+
+    @Benchmark
+    public int decompressBinary(ByteCounter counter) throws Throwable {
+        counter.bytes += data.length;
+        return (int) Targets.LZ_DECOMPRESS_BINARY.invokeExact(binary, output, 0);
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lempel-Ziv binary compression at each level, trading speed for ratio.
+ * Reports input bytes per second and compressed bytes per second, whose
+ * quotient is the ratio, and decompression speed of each level's output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class LempelZivLevelBenchmark {
+
+    @Param({"test4.txt", "1MB", "64MB"})
+    public String input;
+
+    @Param({"FAST", "LAZY", "OPTIMAL", "MAX"})
+    public String level;
+
+    private byte[] data;
+    private Object compressionLevel;
+    private byte[] compressed;
+    private byte[] output;
+
+    @Setup
+    public void setup() throws Throwable {
+        data = Inputs.load(input).getBytes(StandardCharsets.UTF_8);
+        compressionLevel = Targets.lzLevel(level);
+        compressed = (byte[]) Targets.LZ_COMPRESS_LEVEL.invokeExact(data, compressionLevel);
+        output = new byte[data.length];
+    }
+
+    @Benchmark
+    public byte[] compress(CompressionCounter counter) throws Throwable {
+        byte[] result = (byte[]) Targets.LZ_COMPRESS_LEVEL.invokeExact(data, compressionLevel);
+        counter.bytes += data.length;
+        counter.compressedBytes += result.length;
+        return result;
+    }
+
+    @Benchmark
+    public int decompress(CompressionCounter counter) throws Throwable {
+        counter.bytes += data.length;
+        counter.compressedBytes += compressed.length;
+        return (int) Targets.LZ_DECOMPRESS_BINARY.invokeExact(compressed, output, 0);
+    }
+}
@@ -0,0 +1,53 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * KMP search throughput. The default pattern never occurs, so each call scans
+ * the whole input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class SearchBenchmark {
+
+    @Param({"test1.txt", "test2.txt", "test3.txt", "test4.txt", "1MB", "64MB", "1GB"})
+    public String input;
+
+    @Param({"memorisation!"})
+    public String pattern;
+
+    private String text;
+
+    @Setup
+    public void setup() throws Exception {
+        text = Inputs.load(input);
+    }
+
+    @Benchmark
+    public int kmpSearch(ByteCounter counter) throws Throwable {
+        counter.bytes += text.length();
+        return (int) Targets.KMP_SEARCH.invokeExact(text, pattern);
+    }
+
+    @Benchmark
+    public int[] kmpSearchAll(ByteCounter counter) throws Throwable {
+        counter.bytes += text.length();
+        return (int[]) Targets.KMP_SEARCH_ALL.invokeExact(text, pattern);
+    }
+}
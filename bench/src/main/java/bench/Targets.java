@@ -0,0 +1,70 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Handles on the classes under test. They live in the default package, which
+ * cannot be imported and which JMH does not allow benchmarks in, so they are
+ * looked up reflectively once. Calls through these static final handles are
+ * inlined by the JIT like direct calls.
+ */
+final class Targets {
+
+    static final MethodHandle KMP_SEARCH =
+            find("KMP", "search", MethodType.methodType(int.class, String.class, String.class));
+    static final MethodHandle KMP_SEARCH_ALL =
+            find("KMP", "searchAll", MethodType.methodType(int[].class, String.class, String.class));
+
+    static final MethodHandle HUFFMAN_CONSTRUCT_TREE =
+            find("HuffmanCoding", "constructTree", MethodType.methodType(java.util.Map.class, String.class));
+    static final MethodHandle HUFFMAN_ENCODE =
+            find("HuffmanCoding", "encode", MethodType.methodType(String.class, String.class));
+    static final MethodHandle HUFFMAN_DECODE =
+            find("HuffmanCoding", "decode", MethodType.methodType(String.class, String.class));
+    static final MethodHandle HUFFMAN_ENCODE_PACKED =
+            find("HuffmanCoding", "encodePacked", MethodType.methodType(byte[].class, String.class));
+    static final MethodHandle HUFFMAN_DECODE_PACKED =
+            find("HuffmanCoding", "decodePacked", MethodType.methodType(String.class, byte[].class));
+
+    static final MethodHandle LZ_COMPRESS =
+            find("LempelZivCompress", "compress", MethodType.methodType(String.class, String.class));
+    static final MethodHandle LZ_DECOMPRESS =
+            find("LempelZivDecompress", "decompress", MethodType.methodType(String.class, String.class));
+    static final MethodHandle LZ_COMPRESS_BINARY =
+            find("LempelZivCompress", "compress", MethodType.methodType(byte[].class, byte[].class));
+    static final MethodHandle LZ_DECOMPRESS_BINARY = find("LempelZivDecompress", "decompress",
+            MethodType.methodType(int.class, byte[].class, byte[].class, int.class));
+    // The Level enum is in the default package too, so it is passed as an Object
+    static final MethodHandle LZ_COMPRESS_LEVEL = find("LempelZivCompress", "compress",
+            MethodType.methodType(byte[].class, byte[].class, type("LempelZivCompress$Level")))
+            .asType(MethodType.methodType(byte[].class, byte[].class, Object.class));
+
+    private Targets() {
+    }
+
+    /**
+     * The LempelZivCompress.Level constant with the given name.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Object lzLevel(String name) {
+        return Enum.valueOf((Class) type("LempelZivCompress$Level"), name);
+    }
+
+    private static Class<?> type(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle find(String className, String name, MethodType type) {
+        try {
+            return MethodHandles.publicLookup().findStatic(type(className), name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
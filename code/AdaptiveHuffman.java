@@ -0,0 +1,256 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Adaptive Huffman coding (the FGK algorithm) of a byte stream. Encoder and
+ * decoder both start from a tree holding only the NYT ("not yet transmitted")
+ * node and update it in the same way after every byte, so no frequency pass
+ * and no header are needed: input is coded as it arrives, and memory use is
+ * fixed by the alphabet size whatever the length of the stream.
+ * 
+ * A byte seen for the first time is sent as the code of the NYT node followed
+ * by its raw value. The stream ends with the end-of-stream symbol, sent the
+ * same way.
+ */
+public class AdaptiveHuffman {
+
+    public static void main(String[] args) {
+        if (args.length != 1 || !(args[0].equals("c") || args[0].equals("d"))) {
+            System.out.println("Please call this program with one argument, which is " +
+                               "c to compress standard input to standard output, or " +
+                               "d to decompress standard input to standard output.");
+            return;
+        }
+
+        try {
+            InputStream in = new BufferedInputStream(System.in, 1 << 16);
+            OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+            if (args[0].equals("c")) {
+                compress(in, out);
+            } else {
+                decompress(in, out);
+            }
+            out.flush();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Unable to process input: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    static final int END_OF_STREAM = 256;
+    static final int SYMBOL_COUNT = 257; // Byte values and END_OF_STREAM
+    static final int SYMBOL_BITS = 9; // Bits to send a new symbol raw
+
+    // Enough nodes for every symbol as a leaf, the internal nodes and NYT
+    private static final int MAX_NODES = 2 * SYMBOL_COUNT + 1;
+    private static final int ROOT = MAX_NODES - 1;
+
+    /**
+     * The tree is stored in flat arrays indexed by node number. Numbers
+     * increase with weight (the sibling property), and nodes of equal weight
+     * are contiguous, so the highest numbered node of a weight is found by
+     * scanning upwards. Two nodes are swapped by exchanging the contents of
+     * their slots, so parents never need updating.
+     */
+    private final int[] weight = new int[MAX_NODES];
+    private final int[] parent = new int[MAX_NODES];
+    private final int[] left = new int[MAX_NODES]; // -1 for leaves
+    private final int[] right = new int[MAX_NODES];
+    private final int[] symbol = new int[MAX_NODES]; // -1 for internal nodes and NYT
+    private final int[] leaf = new int[SYMBOL_COUNT]; // Node of each symbol, or -1
+    private final int[] path = new int[MAX_NODES]; // Scratch space for writing codes
+
+    private int nyt = ROOT;
+    private int nextFree = ROOT - 1; // Next node number to allocate, counting down
+
+    private AdaptiveHuffman() {
+        Arrays.fill(left, -1);
+        Arrays.fill(right, -1);
+        Arrays.fill(symbol, -1);
+        Arrays.fill(leaf, -1);
+        parent[ROOT] = -1;
+    }
+
+    /**
+     * Compress the whole of in to out. Out is flushed but not closed.
+     */
+    public static void compress(InputStream in, OutputStream out) throws IOException {
+        AdaptiveHuffman coder = new AdaptiveHuffman();
+        BitWriter bits = new BitWriter(out);
+
+        int b;
+        while ((b = in.read()) >= 0) {
+            coder.encode(b, bits);
+        }
+        coder.encode(END_OF_STREAM, bits);
+        bits.flush();
+    }
+
+    /**
+     * Decompress the output of compress from in to out, stopping at the
+     * end-of-stream symbol, and reading no further than the byte holding it.
+     * Throws EOFException if the input ends before that symbol. Out is flushed
+     * but not closed.
+     */
+    public static void decompress(InputStream in, OutputStream out) throws IOException {
+        AdaptiveHuffman coder = new AdaptiveHuffman();
+        BitReader bits = new BitReader(in);
+
+        try {
+            int s;
+            while ((s = coder.decode(bits)) != END_OF_STREAM) {
+                out.write(s);
+            }
+        } catch (UncheckedIOException e) {
+            if (e.getCause() instanceof EOFException) {
+                throw new EOFException("Missing end-of-stream symbol");
+            }
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    public static byte[] compress(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 8);
+        try {
+            compress(new ByteArrayInputStream(data), bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen for byte arrays
+        }
+        return bytes.toByteArray();
+    }
+
+    public static byte[] decompress(byte[] compressed) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(compressed.length * 2);
+        try {
+            decompress(new ByteArrayInputStream(compressed), bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void encode(int s, BitWriter out) throws IOException {
+        if (leaf[s] != -1) {
+            writeCode(leaf[s], out);
+            update(leaf[s]);
+        } else {
+            writeCode(nyt, out);
+            out.write(s, SYMBOL_BITS);
+            update(addSymbol(s));
+        }
+    }
+
+    private int decode(BitReader in) {
+        int node = ROOT;
+        while (left[node] != -1) {
+            node = in.readBit() == 0 ? left[node] : right[node];
+        }
+
+        if (node == nyt) {
+            int s = (int) in.read(SYMBOL_BITS);
+            if (s >= SYMBOL_COUNT) {
+                throw new IllegalStateException("Invalid symbol in input");
+            }
+            update(addSymbol(s));
+            return s;
+        }
+
+        int s = symbol[node];
+        update(node);
+        return s;
+    }
+
+    /**
+     * Write the path from the root to the node, 0 for left and 1 for right.
+     */
+    private void writeCode(int node, BitWriter out) throws IOException {
+        int length = 0;
+        while (node != ROOT) {
+            path[length++] = node == right[parent[node]] ? 1 : 0;
+            node = parent[node];
+        }
+        while (length > 0) {
+            out.writeBit(path[--length]);
+        }
+    }
+
+    /**
+     * Split the NYT node into a new NYT node (left) and a leaf for the symbol
+     * (right), both of weight 0, and return the new leaf.
+     */
+    private int addSymbol(int s) {
+        int newLeaf = nextFree--;
+        int newNyt = nextFree--;
+
+        left[nyt] = newNyt;
+        right[nyt] = newLeaf;
+        parent[newNyt] = nyt;
+        parent[newLeaf] = nyt;
+        symbol[newLeaf] = s;
+        leaf[s] = newLeaf;
+
+        nyt = newNyt;
+        return newLeaf;
+    }
+
+    /**
+     * Add one to the weight of the node and of each of its ancestors. Before
+     * each increment the node is swapped with the highest numbered node of the
+     * same weight (unless that is its parent), which keeps the sibling
+     * property.
+     */
+    private void update(int node) {
+        while (node != -1) {
+            int leader = node;
+            while (leader < ROOT && weight[leader + 1] == weight[node]) {
+                leader++;
+            }
+            if (leader != node && leader != parent[node]) {
+                swap(node, leader);
+                node = leader;
+            }
+            weight[node]++;
+            node = parent[node];
+        }
+    }
+
+    /**
+     * Exchange the subtrees at slots a and b, leaving each slot's parent as
+     * it was.
+     */
+    private void swap(int a, int b) {
+        int tmp = left[a];
+        left[a] = left[b];
+        left[b] = tmp;
+        tmp = right[a];
+        right[a] = right[b];
+        right[b] = tmp;
+        tmp = symbol[a];
+        symbol[a] = symbol[b];
+        symbol[b] = tmp;
+        tmp = weight[a];
+        weight[a] = weight[b];
+        weight[b] = tmp;
+
+        relink(a);
+        relink(b);
+        if (nyt == a) {
+            nyt = b;
+        } else if (nyt == b) {
+            nyt = a;
+        }
+    }
+
+    /**
+     * Point the children or symbol of the node in the given slot back at it.
+     */
+    private void relink(int node) {
+        if (left[node] != -1) {
+            parent[left[node]] = node;
+            parent[right[node]] = node;
+        } else if (symbol[node] != -1) {
+            leaf[symbol[node]] = node;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Aho-Corasick multi-pattern search. This generalises the KMP jump table to a
+ * set of patterns: the patterns are stored in a trie, and every trie node gets
+ * a failure link to the longest proper suffix of its string that is also a
+ * prefix of some pattern. The text is then scanned once, whatever the number
+ * of patterns.
+ * 
+ * The trie is kept in flat int arrays indexed by node number (node 0 is the
+ * root) rather than as linked node objects. Once built, the characters used
+ * by the patterns are given dense ids and the failure links are folded into a
+ * full transition table, so the scan costs one lookup per text character. If
+ * that table would be too large the children are kept sorted instead, with a
+ * direct table for the root.
+ */
+public class AhoCorasick {
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Please call this program with " +
+                               "the input file name followed by one or " +
+                               "more strings to search.");
+        } else {
+            try {
+                Scanner s = new Scanner(new File(args[0]));
+
+                // Read the entire file into one String.
+                StringBuilder fileText = new StringBuilder();
+                while (s.hasNextLine()) {
+                    fileText.append(s.nextLine() + "\n");
+                }
+
+                String[] patterns = Arrays.copyOfRange(args, 1, args.length);
+                AhoCorasick matcher = new AhoCorasick(patterns);
+                matcher.search(fileText.toString(), (patternId, offset) ->
+                        System.out.println(patterns[patternId] + " " + offset));
+            } catch (FileNotFoundException e) {
+                System.out.println("Unable to find file called " + args[0]);
+            }
+        }
+    }
+
+    /**
+     * Receives each match as the index of the pattern (in the order the
+     * patterns were given) and the starting index of the match in the text.
+     */
+    public interface MatchListener {
+        void match(int patternId, int offset);
+    }
+
+    // Largest transition table built, in entries; bigger automata use the sorted edges
+    static final int MAX_TABLE_SIZE = 1 << 22;
+
+    private final int[] patternLengths;
+    private final int[] nextOutput; // Next pattern ending at the same node, or -1
+
+    private int nodeCount;
+    private char[] label; // Character on the edge into each node
+    private int[] firstChild; // Child lists, only used while building
+    private int[] nextSibling;
+    private int[] fail; // Failure link, as in the KMP jump table
+    private int[] output; // First pattern ending at each node, or -1
+    private int[] dictLink; // Nearest node on the failure chain with an output, or -1
+
+    private int[] symbol; // Dense id of each char, 0 for chars in no pattern
+    private int alphabetSize;
+    private int[] transitions; // Next node for node * alphabetSize + symbol, or null
+
+    private int[] rootNext; // Child of the root for each char, or 0
+    private int[] edgeStart; // Edges of node i are edges[edgeStart[i], edgeStart[i + 1])
+    private long[] edges; // Label << 32 | child, sorted by label within a node
+
+    public AhoCorasick(String... patterns) {
+        int capacity = 1;
+        for (String pattern : patterns) {
+            if (pattern.isEmpty()) {
+                throw new IllegalArgumentException("Patterns must not be empty");
+            }
+            capacity += pattern.length();
+        }
+
+        patternLengths = new int[patterns.length];
+        nextOutput = new int[patterns.length];
+        label = new char[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        output = new int[capacity];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+        Arrays.fill(output, -1);
+        nodeCount = 1; // Root
+
+        for (int id = 0; id < patterns.length; id++) {
+            addPattern(id, patterns[id]);
+        }
+        buildAlphabet();
+        if ((long) nodeCount * alphabetSize <= MAX_TABLE_SIZE) {
+            buildTransitions();
+        } else {
+            buildSortedEdges();
+            buildFailureLinks();
+        }
+        firstChild = null;
+        nextSibling = null;
+    }
+
+    public AhoCorasick(List<String> patterns) {
+        this(patterns.toArray(new String[0]));
+    }
+
+    public int patternCount() {
+        return patternLengths.length;
+    }
+
+    /**
+     * Scan the text once, reporting every occurrence of every pattern. Matches
+     * are reported in order of their end position in the text.
+     */
+    public void search(String text, MatchListener listener) {
+        int[] transitions = this.transitions;
+        int[] symbol = this.symbol;
+        int alphabetSize = this.alphabetSize;
+        int state = 0;
+
+        for (int pos = 0; pos < text.length(); pos++) {
+            char c = text.charAt(pos);
+            state = transitions != null
+                    ? transitions[state * alphabetSize + symbol[c]]
+                    : step(state, c);
+
+            int node = output[state] != -1 ? state : dictLink[state];
+            while (node != -1) {
+                for (int id = output[node]; id != -1; id = nextOutput[id]) {
+                    listener.match(id, pos - patternLengths[id] + 1);
+                }
+                node = dictLink[node];
+            }
+        }
+    }
+
+    /**
+     * Follow the goto edge for c from the given state, falling back through
+     * the failure links until one exists (or the root is reached). Only used
+     * when there is no transition table.
+     */
+    private int step(int state, char c) {
+        while (state != 0) {
+            int next = child(state, c);
+            if (next != -1) {
+                return next;
+            }
+            state = fail[state];
+        }
+        return rootNext[c];
+    }
+
+    /**
+     * Binary search the sorted edges of the node for the one labelled c.
+     */
+    private int child(int node, char c) {
+        int low = edgeStart[node];
+        int high = edgeStart[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midLabel = (int) (edges[mid] >>> 32);
+            if (midLabel < c) {
+                low = mid + 1;
+            } else if (midLabel > c) {
+                high = mid - 1;
+            } else {
+                return (int) edges[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Child of the node along the edge labelled c in the trie being built.
+     */
+    private int trieChild(int node, char c) {
+        for (int edge = firstChild[node]; edge != -1; edge = nextSibling[edge]) {
+            if (label[edge] == c) {
+                return edge;
+            }
+        }
+        return -1;
+    }
+
+    private void addPattern(int id, String pattern) {
+        int node = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            int next = trieChild(node, c);
+            if (next == -1) { // New node, pushed on the front of the child list
+                next = nodeCount++;
+                label[next] = c;
+                nextSibling[next] = firstChild[node];
+                firstChild[node] = next;
+            }
+            node = next;
+        }
+
+        patternLengths[id] = pattern.length();
+        nextOutput[id] = output[node];
+        output[node] = id;
+    }
+
+    /**
+     * Number the characters on the trie edges from 1, leaving 0 for every
+     * character that appears in no pattern.
+     */
+    private void buildAlphabet() {
+        symbol = new int[Character.MAX_VALUE + 1];
+        alphabetSize = 1;
+        for (int node = 1; node < nodeCount; node++) {
+            if (symbol[label[node]] == 0) {
+                symbol[label[node]] = alphabetSize++;
+            }
+        }
+    }
+
+    /**
+     * Breadth-first pass setting the failure and dictionary links, in the
+     * same way buildJumpTable extends the match for each prefix of a pattern.
+     * A missing edge takes the transition of the failure link for the same
+     * character, which is already filled in as that node is shallower.
+     */
+    private void buildTransitions() {
+        transitions = new int[nodeCount * alphabetSize];
+        fail = new int[nodeCount];
+        dictLink = new int[nodeCount];
+        dictLink[0] = -1;
+
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+
+        while (head < tail) {
+            int parent = queue[head++];
+            int row = parent * alphabetSize;
+            int failRow = fail[parent] * alphabetSize;
+            for (int node = firstChild[parent]; node != -1; node = nextSibling[node]) {
+                int f = parent == 0 ? 0 : transitions[failRow + symbol[label[node]]];
+                fail[node] = f;
+                dictLink[node] = output[f] != -1 ? f : dictLink[f];
+                queue[tail++] = node;
+            }
+            if (parent != 0) {
+                System.arraycopy(transitions, failRow, transitions, row, alphabetSize);
+            }
+            for (int node = firstChild[parent]; node != -1; node = nextSibling[node]) {
+                transitions[row + symbol[label[node]]] = node;
+            }
+        }
+    }
+
+    /**
+     * Copy the child lists into one array sorted by label within each node,
+     * and give the root a direct table.
+     */
+    private void buildSortedEdges() {
+        rootNext = new int[Character.MAX_VALUE + 1];
+        edgeStart = new int[nodeCount + 1];
+        edges = new long[nodeCount - 1];
+
+        int count = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            edgeStart[node] = count;
+            for (int edge = firstChild[node]; edge != -1; edge = nextSibling[edge]) {
+                edges[count++] = (long) label[edge] << 32 | edge;
+                if (node == 0) {
+                    rootNext[label[edge]] = edge;
+                }
+            }
+            Arrays.sort(edges, edgeStart[node], count);
+        }
+        edgeStart[nodeCount] = count;
+    }
+
+    /**
+     * Breadth-first pass setting the failure and dictionary links, in the
+     * same way buildJumpTable extends the match for each prefix of a pattern.
+     */
+    private void buildFailureLinks() {
+        fail = new int[nodeCount];
+        dictLink = new int[nodeCount];
+        dictLink[0] = -1;
+
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        for (int node = firstChild[0]; node != -1; node = nextSibling[node]) {
+            fail[node] = 0;
+            dictLink[node] = -1;
+            queue[tail++] = node;
+        }
+
+        while (head < tail) {
+            int parent = queue[head++];
+            for (int node = firstChild[parent]; node != -1; node = nextSibling[node]) {
+                fail[node] = step(fail[parent], label[node]);
+                int f = fail[node];
+                dictLink[node] = output[f] != -1 ? f : dictLink[f];
+                queue[tail++] = node;
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.*;
+
+/**
+ * Binary tree match finder, as used by LZMA. Positions with the same hash are
+ * kept in a binary search tree ordered by the data that follows them, with
+ * the newest position at the root. Finding a match is a walk down that tree,
+ * which also re-roots it at the new position, so the longest match is found
+ * in about log n comparisons of the window instead of a walk along every
+ * position with the same hash. maxDepth caps the walk on degenerate data.
+ */
+public class BinaryTreeMatchFinder implements MatchFinder {
+
+    static final int HASH_BITS = 16;
+
+    private final byte[] data;
+    private final int end;
+    private final int windowSize; // A power of two; distances are below it
+    private final int maxDepth;
+    private final int maxMatch;
+
+    private final int[] head = new int[1 << HASH_BITS];
+    private final int[] children; // Left then right child of each window slot
+    private final int mask;
+
+    public BinaryTreeMatchFinder(byte[] data, int end, int windowSize, int maxDepth, int maxMatch) {
+        if (Integer.bitCount(windowSize) != 1) {
+            throw new IllegalArgumentException("Window size must be a power of two");
+        }
+        this.data = data;
+        this.end = end;
+        this.windowSize = windowSize;
+        this.maxDepth = maxDepth;
+        this.maxMatch = maxMatch;
+        // Short inputs never fill the window, so only size the trees for them
+        int slots = Math.min(windowSize, Integer.highestOneBit(Math.max(end - 1, 1)) << 1);
+        this.children = new int[2 * slots];
+        this.mask = slots - 1;
+        Arrays.fill(head, -1);
+    }
+
+    @Override
+    public long findAndInsert(int pos) {
+        if (pos + LempelZivCompress.MIN_MATCH > end) {
+            return 0;
+        }
+
+        int hash = hash(pos);
+        int candidate = head[hash];
+        head[hash] = pos;
+
+        // Where the next smaller and larger candidates get linked in under pos
+        int smaller = 2 * (pos & mask);
+        int larger = smaller + 1;
+        // Bytes every candidate below each link is known to share with pos
+        int smallerLength = 0;
+        int largerLength = 0;
+
+        int limit = Math.min(maxMatch, end - pos);
+        int bestLength = 0;
+        int bestDistance = 0;
+        int depth = maxDepth;
+
+        while (true) {
+            if (candidate < 0 || pos - candidate >= windowSize || depth-- == 0) {
+                children[smaller] = -1;
+                children[larger] = -1;
+                break;
+            }
+
+            int node = 2 * (candidate & mask);
+            int length = LempelZivCompress.matchLength(data, candidate, pos,
+                    Math.min(smallerLength, largerLength), limit);
+
+            if (length > bestLength) {
+                bestLength = length;
+                bestDistance = pos - candidate;
+            }
+
+            if (length == limit) {
+                // pos replaces candidate in the tree, taking over both its subtrees
+                children[smaller] = children[node];
+                children[larger] = children[node + 1];
+                break;
+            }
+
+            if ((data[candidate + length] & 0xFF) < (data[pos + length] & 0xFF)) {
+                children[smaller] = candidate;
+                smaller = node + 1;
+                smallerLength = length;
+                candidate = children[smaller];
+            } else {
+                children[larger] = candidate;
+                larger = node;
+                largerLength = length;
+                candidate = children[larger];
+            }
+        }
+
+        return bestLength >= LempelZivCompress.MIN_MATCH ? MatchFinder.match(bestDistance, bestLength) : 0;
+    }
+
+    /**
+     * The tree has to be re-rooted at every position, so this is the same walk
+     * with the match thrown away.
+     */
+    @Override
+    public void insert(int pos) {
+        findAndInsert(pos);
+    }
+
+    private int hash(int pos) {
+        int key = (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8 | (data[pos + 2] & 0xFF) << 16;
+        return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+}
@@ -0,0 +1,116 @@
+import java.io.*;
+
+/**
+ * Reads bits, most significant bit first, from a byte array or stream written
+ * by BitWriter. Bytes are loaded into a 64-bit accumulator several at a time.
+ * Peeking past the end returns zero bits (the padding BitWriter adds). For a
+ * byte array, reading past the end does too; for a stream it throws, and only
+ * the bytes holding the bits asked for are taken from the stream.
+ */
+public class BitReader {
+
+    // Longest bit string that can be peeked at once
+    static final int MAX_PEEK_BITS = 56;
+
+    private final byte[] data;
+    private final int end;
+    private final InputStream in; // Source of bytes instead of data, or null
+    private int position; // Next byte to load
+    private long accumulator;
+    private int bitCount; // Bits loaded into the accumulator and not yet consumed
+    private long bitsConsumed;
+
+    public BitReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public BitReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.end = offset + length;
+        this.in = null;
+    }
+
+    /**
+     * Read from a stream, which should be buffered. IOExceptions from the
+     * stream, and an EOFException for consuming bits past its end, are thrown
+     * as UncheckedIOException.
+     */
+    public BitReader(InputStream in) {
+        this.data = null;
+        this.end = 0;
+        this.in = in;
+    }
+
+    /**
+     * Return the next length bits without consuming them.
+     */
+    public long peek(int length) {
+        if (bitCount < length) {
+            refill(length);
+        }
+        if (bitCount < length) { // Past the end of the data, pad with zeros
+            return (accumulator << (length - bitCount)) & ((1L << length) - 1);
+        }
+        return (accumulator >>> (bitCount - length)) & ((1L << length) - 1);
+    }
+
+    public void skip(int length) {
+        if (bitCount < length) {
+            refill(length);
+            if (bitCount < length && in != null) {
+                throw new UncheckedIOException(new EOFException("Unexpected end of bit stream"));
+            }
+        }
+        bitCount = Math.max(0, bitCount - length);
+        bitsConsumed += length;
+    }
+
+    public long read(int length) {
+        if (length > MAX_PEEK_BITS) {
+            long high = read(length - MAX_PEEK_BITS);
+            return (high << MAX_PEEK_BITS) | read(MAX_PEEK_BITS);
+        }
+        long value = peek(length);
+        skip(length);
+        return value;
+    }
+
+    public int readBit() {
+        return (int) read(1);
+    }
+
+    public long getBitsConsumed() {
+        return bitsConsumed;
+    }
+
+    private void refill(int length) {
+        if (in != null) {
+            refillFromStream(length);
+            return;
+        }
+        while (bitCount <= MAX_PEEK_BITS && position < end) {
+            accumulator = (accumulator << 8) | (data[position++] & 0xFF);
+            bitCount += 8;
+        }
+    }
+
+    /**
+     * Load just enough bytes for length bits, so that nothing after the end of
+     * a bit stream is consumed and a pipe is not read ahead of what is needed.
+     */
+    private void refillFromStream(int length) {
+        try {
+            while (bitCount < length) {
+                int next = in.read();
+                if (next < 0) {
+                    return;
+                }
+                accumulator = (accumulator << 8) | next;
+                bitCount += 8;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.io.*;
+
+/**
+ * Writes a sequence of bit strings, most significant bit first, packed into
+ * bytes. Bits are gathered in a 64-bit accumulator and moved out a byte at a
+ * time into a buffer, so each call is a couple of shifts rather than one
+ * append per bit, and the stream only sees whole buffers.
+ */
+public class BitWriter implements Closeable {
+
+    // Longest bit string that fits in the accumulator alongside a partial byte
+    static final int MAX_WRITE_BITS = 56;
+
+    static final int BUFFER_SIZE = 1 << 13;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferLength;
+    private long accumulator;
+    private int bitCount; // Bits in the accumulator not yet written, always < 8 between calls
+    private long bitsWritten;
+
+    public BitWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Write the low length bits of value.
+     */
+    public void write(long value, int length) throws IOException {
+        if (length > MAX_WRITE_BITS) {
+            write(value >>> MAX_WRITE_BITS, length - MAX_WRITE_BITS);
+            length = MAX_WRITE_BITS;
+        }
+
+        accumulator = (accumulator << length) | (value & ((1L << length) - 1));
+        bitCount += length;
+        bitsWritten += length;
+
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            if (bufferLength == BUFFER_SIZE) {
+                flushBuffer();
+            }
+            buffer[bufferLength++] = (byte) (accumulator >>> bitCount);
+        }
+    }
+
+    public void writeBit(int bit) throws IOException {
+        write(bit, 1);
+    }
+
+    /**
+     * Number of bits written so far, not counting padding.
+     */
+    public long getBitsWritten() {
+        return bitsWritten;
+    }
+
+    /**
+     * Pad the last partial byte with zero bits and write everything out.
+     */
+    public void flush() throws IOException {
+        if (bitCount > 0) {
+            write(0, 8 - bitCount);
+        }
+        flushBuffer();
+        out.flush();
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, bufferLength);
+        bufferLength = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+}
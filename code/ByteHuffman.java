@@ -0,0 +1,119 @@
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Huffman coding of files as raw bytes rather than text, so any file
+ * (including binary files and files with any line endings) is reproduced
+ * exactly. Files are read through FileChannels in large blocks, once to count
+ * byte frequencies and once to encode, and output goes straight to a file, so
+ * memory use does not depend on the file size.
+ * 
+ * Format: the canonical code lengths (see CanonicalHuffman), the number of
+ * bytes as 64 bits, then the codes.
+ */
+public class ByteHuffman {
+
+    public static void main(String[] args) {
+        if (args.length != 3 || !(args[0].equals("c") || args[0].equals("d"))) {
+            System.out.println("Please call this program with three arguments, which are " +
+                               "c to compress or d to decompress, the input file name " +
+                               "and the output file name.");
+            return;
+        }
+
+        try {
+            if (args[0].equals("c")) {
+                compress(Paths.get(args[1]), Paths.get(args[2]));
+            } else {
+                decompress(Paths.get(args[1]), Paths.get(args[2]));
+            }
+        } catch (NoSuchFileException e) {
+            System.out.println("Unable to find file called " + args[1]);
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            System.out.println("Unable to process " + args[1] + ": " + e.getMessage());
+        }
+    }
+
+    // Bytes read or written per channel operation
+    static final int BLOCK_SIZE = 1 << 20;
+
+    /**
+     * Compress the input file into the output file.
+     */
+    public static void compress(Path input, Path output) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            long[] frequencies = countFrequencies(in);
+            CanonicalHuffman code = CanonicalHuffman.fromFrequencies(frequencies, 8);
+
+            try (OutputStream out = Channels.newOutputStream(FileChannel.open(output,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
+                BitWriter bits = new BitWriter(out);
+                code.writeHeader(bits);
+                bits.write(in.size(), 64);
+
+                ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+                in.position(0);
+                while (in.read(block) >= 0) {
+                    block.flip();
+                    while (block.hasRemaining()) {
+                        code.encode(block.get() & 0xFF, bits);
+                    }
+                    block.clear();
+                }
+                bits.flush();
+            }
+        }
+    }
+
+    /**
+     * First pass: count how often each byte value occurs in the file. Counts
+     * are longs, as files can hold more than 2^31 copies of a byte.
+     */
+    static long[] countFrequencies(FileChannel in) throws IOException {
+        long[] frequencies = new long[256];
+        ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+
+        in.position(0);
+        while (in.read(block) >= 0) {
+            block.flip();
+            while (block.hasRemaining()) {
+                frequencies[block.get() & 0xFF]++;
+            }
+            block.clear();
+        }
+        return frequencies;
+    }
+
+    /**
+     * Decompress a file written by compress into the output file. A corrupt
+     * file throws IllegalArgumentException (see CanonicalHuffman), or an
+     * UncheckedIOException wrapping an EOFException if it is cut short.
+     */
+    public static void decompress(Path input, Path output) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(input), BLOCK_SIZE);
+             FileChannel out = FileChannel.open(output,
+                     StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            BitReader bits = new BitReader(in);
+            CanonicalHuffman code = CanonicalHuffman.readHeader(bits);
+            long remaining = bits.read(64);
+
+            byte[] block = new byte[BLOCK_SIZE];
+            while (remaining > 0) {
+                int length = (int) Math.min(BLOCK_SIZE, remaining);
+                for (int i = 0; i < length; i++) {
+                    block[i] = (byte) code.decode(bits);
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(block, 0, length);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                remaining -= length;
+            }
+        }
+    }
+}
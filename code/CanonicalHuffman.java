@@ -0,0 +1,400 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Canonical Huffman code. Only the code length of each symbol is kept; the
+ * codes themselves are assigned in order of (length, symbol), so the code can
+ * be rebuilt from the lengths alone and stored in a small header, and
+ * decoding needs no tree.
+ * 
+ * Symbols are ints below 2^symbolBits, e.g. chars with symbolBits = 16.
+ * 
+ * Lengths that do not form a prefix code, whether passed in or read from a
+ * corrupt header, are rejected with an IllegalArgumentException.
+ */
+public class CanonicalHuffman {
+
+    // Bits used to store each code length in the header
+    static final int LENGTH_BITS = 6;
+    static final int MAX_CODE_LENGTH = (1 << LENGTH_BITS) - 1;
+
+    // Widest symbols supported, i.e. chars
+    static final int MAX_SYMBOL_BITS = 16;
+
+    // Bits resolved by one probe of the decode table; longer codes take the slow path
+    static final int TABLE_BITS = 10;
+
+    private final int symbolBits;
+    private final int[] lengths; // Code length of each symbol, 0 if unused
+    private final long[] codes; // Code of each symbol
+    private final int[] sortedSymbols; // Used symbols in code order
+    private final int[] lengthCounts; // Number of codes of each length
+    private final int maxLength;
+    private final int[] decodeTable; // (symbol << LENGTH_BITS) | length, or -1 for longer codes
+
+    /**
+     * Build the canonical code for the given code lengths, indexed by symbol.
+     * Throws IllegalArgumentException if the lengths are not those of a
+     * prefix code, i.e. there are more codes of some length than fit.
+     */
+    public CanonicalHuffman(int[] lengths, int symbolBits) {
+        checkSymbolBits(symbolBits);
+        this.symbolBits = symbolBits;
+        this.lengths = Arrays.copyOf(lengths, 1 << symbolBits);
+        this.codes = new long[this.lengths.length];
+        this.lengthCounts = new int[MAX_CODE_LENGTH + 1];
+
+        int used = 0;
+        int longest = 0;
+        for (int length : this.lengths) {
+            if (length < 0 || length > MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Invalid code length " + length);
+            }
+            if (length > 0) {
+                lengthCounts[length]++;
+                used++;
+                longest = Math.max(longest, length);
+            }
+        }
+        this.maxLength = longest;
+
+        // Kraft inequality: count the codes of each length still free, capped
+        // once there are more than could ever be used
+        long available = 1;
+        for (int length = 1; length <= longest; length++) {
+            available = Math.min(available << 1, 1L << 32) - lengthCounts[length];
+            if (available < 0) {
+                throw new IllegalArgumentException("Too many codes of length " + length);
+            }
+        }
+
+        // Sort symbols by length, then by symbol value (counting sort on length)
+        int[] next = new int[MAX_CODE_LENGTH + 2];
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            next[length + 1] = next[length] + lengthCounts[length];
+        }
+        this.sortedSymbols = new int[used];
+        for (int symbol = 0; symbol < this.lengths.length; symbol++) {
+            if (this.lengths[symbol] > 0) {
+                sortedSymbols[next[this.lengths[symbol]]++] = symbol;
+            }
+        }
+
+        // Consecutive codes within a length, shifted left when the length grows
+        long code = 0;
+        int prevLength = 0;
+        for (int symbol : sortedSymbols) {
+            int length = this.lengths[symbol];
+            code <<= length - prevLength;
+            codes[symbol] = code++;
+            prevLength = length;
+        }
+
+        this.decodeTable = buildDecodeTable();
+    }
+
+    /**
+     * Table indexed by the next TABLE_BITS bits of input. A code of length L
+     * up to TABLE_BITS fills every entry starting with it, i.e. 2^(TABLE_BITS - L)
+     * of them, so one lookup finds both the symbol and how many bits to consume.
+     */
+    private int[] buildDecodeTable() {
+        int[] table = new int[1 << TABLE_BITS];
+        Arrays.fill(table, -1);
+
+        for (int symbol : sortedSymbols) {
+            int length = lengths[symbol];
+            if (length > TABLE_BITS) {
+                break; // Sorted by length, so the rest are longer too
+            }
+            int shift = TABLE_BITS - length;
+            int start = (int) (codes[symbol] << shift);
+            Arrays.fill(table, start, start + (1 << shift), (symbol << LENGTH_BITS) | length);
+        }
+        return table;
+    }
+
+    /**
+     * Build the canonical code with the same code lengths as the given codes,
+     * e.g. from HuffmanCoding.constructTree.
+     */
+    public static CanonicalHuffman fromCodes(Map<Character, String> charCodes) {
+        return fromCodes(charCodes, 16);
+    }
+
+    /**
+     * Version of fromCodes for symbols narrower than chars, e.g. 8 bits for
+     * bytes.
+     */
+    public static CanonicalHuffman fromCodes(Map<Character, String> charCodes, int symbolBits) {
+        int[] lengths = new int[1 << symbolBits];
+        for (Map.Entry<Character, String> entry : charCodes.entrySet()) {
+            // A tree with a single leaf gives it the empty code; it still needs a bit
+            lengths[entry.getKey()] = Math.max(1, entry.getValue().length());
+        }
+        return new CanonicalHuffman(lengths, symbolBits);
+    }
+
+    /**
+     * Build the canonical code with the lengths of the Huffman tree for the
+     * given frequencies, indexed by symbol.
+     */
+    public static CanonicalHuffman fromFrequencies(int[] frequencies, int symbolBits) {
+        Map<Character, String> charCodes = HuffmanCoding.treeCodes(frequencies);
+        if (charCodes.isEmpty()) {
+            return new CanonicalHuffman(new int[0], symbolBits);
+        }
+        return fromCodes(charCodes, symbolBits);
+    }
+
+    /**
+     * Version of fromFrequencies for counts that may not fit in an int, e.g.
+     * byte counts of files over 2 GB. The tree is built with int weights, so
+     * the counts are first scaled down until their total fits (see
+     * scaleFrequencies).
+     */
+    public static CanonicalHuffman fromFrequencies(long[] frequencies, int symbolBits) {
+        return fromFrequencies(scaleFrequencies(frequencies), symbolBits);
+    }
+
+    /**
+     * The frequencies shifted right as little as possible for their total to
+     * fit in an int. Every used symbol keeps a count of at least 1, and the
+     * relative counts, hence the code, barely change.
+     */
+    static int[] scaleFrequencies(long[] frequencies) {
+        int shift = 0;
+        while (scaledTotal(frequencies, shift) > Integer.MAX_VALUE) {
+            shift++;
+        }
+
+        int[] scaled = new int[frequencies.length];
+        for (int symbol = 0; symbol < frequencies.length; symbol++) {
+            if (frequencies[symbol] > 0) {
+                scaled[symbol] = (int) Math.max(1, frequencies[symbol] >> shift);
+            }
+        }
+        return scaled;
+    }
+
+    private static long scaledTotal(long[] frequencies, int shift) {
+        long total = 0;
+        for (long frequency : frequencies) {
+            if (frequency > 0) {
+                total += Math.max(1, frequency >> shift);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Code lengths for the given symbol frequencies such that no code is
+     * longer than maxLength, with the smallest total coded size possible under
+     * that limit. Uses the package-merge algorithm: starting from the longest
+     * allowed length, the cheapest pairs of items are repeatedly packaged up
+     * and merged with the symbols for the next shorter length; each symbol's
+     * code length is the number of times it ends up in the 2n - 2 cheapest
+     * items at the top.
+     */
+    public static int[] limitedCodeLengths(int[] frequencies, int maxLength) {
+        int[] lengths = new int[frequencies.length];
+
+        // Used symbols, sorted by frequency then by symbol
+        int n = 0;
+        for (int frequency : frequencies) {
+            if (frequency > 0) {
+                n++;
+            }
+        }
+        if (n == 0) {
+            return lengths;
+        }
+        Integer[] order = new Integer[n];
+        for (int symbol = 0, i = 0; symbol < frequencies.length; symbol++) {
+            if (frequencies[symbol] > 0) {
+                order[i++] = symbol;
+            }
+        }
+        Arrays.sort(order, Comparator.comparingInt((Integer symbol) -> frequencies[symbol])
+                                     .thenComparingInt(symbol -> symbol));
+        if (n == 1) {
+            lengths[order[0]] = 1;
+            return lengths;
+        }
+        if (maxLength > MAX_CODE_LENGTH || (maxLength < 31 && (1 << maxLength) < n)) {
+            throw new IllegalArgumentException("Cannot code " + n + " symbols in at most "
+                                               + maxLength + " bits");
+        }
+
+        // Items of each level: a symbol (stored as ~index into order) or a
+        // package of items p and p + 1 of the level below (stored as p)
+        long[][] weights = new long[maxLength][];
+        int[][] items = new int[maxLength][];
+
+        weights[0] = new long[n];
+        items[0] = new int[n];
+        for (int i = 0; i < n; i++) {
+            weights[0][i] = frequencies[order[i]];
+            items[0][i] = ~i;
+        }
+
+        for (int level = 1; level < maxLength; level++) {
+            long[] below = weights[level - 1];
+            int packages = below.length / 2;
+            weights[level] = new long[n + packages];
+            items[level] = new int[n + packages];
+
+            // Merge the symbols with the packages, symbols first on ties
+            int symbol = 0;
+            int pack = 0;
+            for (int out = 0; out < n + packages; out++) {
+                long packWeight = pack < packages ? below[2 * pack] + below[2 * pack + 1] : Long.MAX_VALUE;
+                if (symbol < n && frequencies[order[symbol]] <= packWeight) {
+                    weights[level][out] = frequencies[order[symbol]];
+                    items[level][out] = ~symbol++;
+                } else {
+                    weights[level][out] = packWeight;
+                    items[level][out] = 2 * pack++;
+                }
+            }
+        }
+
+        int top = maxLength - 1;
+        for (int i = 0; i < 2 * n - 2; i++) {
+            countSymbols(items, top, items[top][i], order, lengths);
+        }
+        return lengths;
+    }
+
+    /**
+     * Add one to the length of every symbol in the given item.
+     */
+    private static void countSymbols(int[][] items, int level, int item, Integer[] order, int[] lengths) {
+        if (item < 0) {
+            lengths[order[~item]]++;
+            return;
+        }
+        countSymbols(items, level - 1, items[level - 1][item], order, lengths);
+        countSymbols(items, level - 1, items[level - 1][item + 1], order, lengths);
+    }
+
+    public int getSymbolBits() {
+        return symbolBits;
+    }
+
+    public int getLength(int symbol) {
+        return lengths[symbol];
+    }
+
+    public long getCode(int symbol) {
+        return codes[symbol];
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * The codes as strings of '0' and '1', as returned by
+     * HuffmanCoding.constructTree.
+     */
+    public Map<Character, String> toCodeMap() {
+        Map<Character, String> charCodes = new HashMap<>();
+        for (int symbol : sortedSymbols) {
+            StringBuilder code = new StringBuilder(lengths[symbol]);
+            for (int bit = lengths[symbol] - 1; bit >= 0; bit--) {
+                code.append((codes[symbol] >>> bit & 1) == 0 ? '0' : '1');
+            }
+            charCodes.put((char) symbol, code.toString());
+        }
+        return charCodes;
+    }
+
+    public void encode(int symbol, BitWriter out) throws IOException {
+        int length = lengths[symbol];
+        if (length == 0) {
+            throw new IllegalArgumentException("No code for symbol " + symbol);
+        }
+        out.write(codes[symbol], length);
+    }
+
+    /**
+     * Decode one symbol. Codes up to TABLE_BITS long, which is nearly all of
+     * the input for typical text, are resolved by a single table lookup.
+     */
+    public int decode(BitReader in) {
+        int entry = decodeTable[(int) in.peek(TABLE_BITS)];
+        if (entry >= 0) {
+            in.skip(entry & MAX_CODE_LENGTH);
+            return entry >>> LENGTH_BITS;
+        }
+        return decodeBitByBit(in);
+    }
+
+    /**
+     * Decode one symbol, reading one bit at a time. Within each length the
+     * codes are consecutive, so each step only compares against the first
+     * code of that length.
+     */
+    public int decodeBitByBit(BitReader in) {
+        long code = 0; // Bits read so far
+        long first = 0; // First code of the current length
+        int index = 0; // Position in sortedSymbols of the first code of this length
+
+        for (int length = 1; length <= maxLength; length++) {
+            code |= in.readBit();
+            int count = lengthCounts[length];
+            if (code - first < count) {
+                return sortedSymbols[index + (int) (code - first)];
+            }
+            index += count;
+            first = (first + count) << 1;
+            code <<= 1;
+        }
+        throw new IllegalArgumentException("Invalid code in input");
+    }
+
+    /**
+     * Write the code lengths: the symbol width, the number of used symbols,
+     * then each used symbol with its length.
+     */
+    public void writeHeader(BitWriter out) throws IOException {
+        out.write(symbolBits, 5);
+        out.write(sortedSymbols.length, symbolBits + 1);
+        for (int symbol : sortedSymbols) {
+            out.write(symbol, symbolBits);
+            out.write(lengths[symbol], LENGTH_BITS);
+        }
+    }
+
+    /**
+     * Read the code lengths written by writeHeader. A corrupt header throws
+     * IllegalArgumentException, the same as invalid lengths passed to the
+     * constructor.
+     */
+    public static CanonicalHuffman readHeader(BitReader in) {
+        int symbolBits = (int) in.read(5);
+        checkSymbolBits(symbolBits);
+        int used = (int) in.read(symbolBits + 1);
+        if (used > 1 << symbolBits) {
+            throw new IllegalArgumentException("Header lists " + used + " of "
+                    + (1 << symbolBits) + " symbols");
+        }
+        int[] lengths = new int[1 << symbolBits];
+        for (int i = 0; i < used; i++) {
+            int symbol = (int) in.read(symbolBits);
+            int length = (int) in.read(LENGTH_BITS);
+            if (length == 0 || lengths[symbol] != 0) {
+                throw new IllegalArgumentException("Invalid header entry for symbol " + symbol);
+            }
+            lengths[symbol] = length;
+        }
+        return new CanonicalHuffman(lengths, symbolBits);
+    }
+
+    private static void checkSymbolBits(int symbolBits) {
+        if (symbolBits < 0 || symbolBits > MAX_SYMBOL_BITS) {
+            throw new IllegalArgumentException("Invalid symbol width " + symbolBits);
+        }
+    }
+}
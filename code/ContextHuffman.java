@@ -0,0 +1,227 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Order-1 context-modelled Huffman coding. Each character is coded with a
+ * code chosen by the character before it, since in text the next character
+ * depends strongly on the previous one (e.g. 'q' is nearly always followed by
+ * 'u'), so these codes are much shorter than a single order-0 code.
+ * 
+ * Every context's code must be sent in the header, so a context only gets its
+ * own code when the bits it saves outweigh the cost of its header; other
+ * contexts, including all the rare ones, fall back to the order-0 code. The
+ * context codes are over positions in the sorted alphabet of the text rather
+ * than over chars, which keeps their headers small.
+ * 
+ * Format: the order-0 code header (see CanonicalHuffman), the number of
+ * characters (32 bits), the number of context codes, each context code as
+ * the alphabet position of its context and its header, then the codes.
+ */
+public class ContextHuffman {
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Please call this program with one argument which is the input file name.");
+        } else {
+            try {
+                Scanner s = new Scanner(new File(args[0]));
+
+                // Read the entire file into one String.
+                StringBuilder fileText = new StringBuilder();
+                while (s.hasNextLine()) {
+                    fileText.append(s.nextLine() + "\n");
+                }
+
+                String text = fileText.toString();
+                HuffmanCodec codec = HuffmanCodec.fromText(text);
+                int order0 = codec.toHeader().length + codec.encode(text).length;
+                byte[] order1 = encode(text);
+                if (!decode(order1).equals(text)) {
+                    throw new IllegalStateException("Order-1 output does not decode to the input");
+                }
+                System.out.println("Order-0: " + order0 + " bytes, order-1: " + order1.length + " bytes");
+            } catch (FileNotFoundException e) {
+                System.out.println("Unable to find file called " + args[0]);
+            }
+        }
+    }
+
+    // Largest alphabet for which contexts are modelled; the pair counts take
+    // alphabet size squared ints, so larger alphabets are coded order-0 only
+    static final int MAX_CONTEXT_ALPHABET = 1024;
+
+    public static byte[] encode(String text) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length() / 2 + 16);
+        try {
+            encode(text, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen for a byte array
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encode the text to the stream, which is flushed but not closed.
+     */
+    public static void encode(String text, OutputStream out) throws IOException {
+        int[] frequencies = HuffmanCoding.countFrequencies(text);
+        CanonicalHuffman order0 = CanonicalHuffman.fromFrequencies(frequencies, 16);
+        int[] alphabet = alphabet(order0);
+        int[] position = new int[Character.MAX_VALUE + 1];
+        for (int i = 0; i < alphabet.length; i++) {
+            position[alphabet[i]] = i;
+        }
+        int positionBits = positionBits(alphabet.length);
+
+        CanonicalHuffman[] contextCodes = new CanonicalHuffman[alphabet.length];
+        int contextCount = 0;
+        if (alphabet.length <= MAX_CONTEXT_ALPHABET) {
+            contextCount = buildContextCodes(text, order0, alphabet, position, positionBits, contextCodes);
+        }
+
+        BitWriter bits = new BitWriter(out);
+        order0.writeHeader(bits);
+        bits.write(text.length(), 32);
+        bits.write(contextCount, positionBits + 1);
+        for (int context = 0; context < alphabet.length; context++) {
+            if (contextCodes[context] != null) {
+                bits.write(context, positionBits);
+                contextCodes[context].writeHeader(bits);
+            }
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            CanonicalHuffman code = i == 0 ? null : contextCodes[position[text.charAt(i - 1)]];
+            if (code == null) {
+                order0.encode(c, bits);
+            } else {
+                code.encode(position[c], bits);
+            }
+        }
+        bits.flush();
+    }
+
+    /**
+     * Count the characters following each context and give a context its own
+     * code where that is smaller overall than using the order-0 code. Returns
+     * the number of contexts given codes.
+     */
+    private static int buildContextCodes(String text, CanonicalHuffman order0, int[] alphabet, int[] position,
+                                         int positionBits, CanonicalHuffman[] contextCodes) {
+        int size = alphabet.length;
+        int[] pairs = new int[size * size]; // pairs[context * size + next]
+        for (int i = 1; i < text.length(); i++) {
+            pairs[position[text.charAt(i - 1)] * size + position[text.charAt(i)]]++;
+        }
+
+        int contextCount = 0;
+        int[] frequencies = new int[size];
+        for (int context = 0; context < size; context++) {
+            System.arraycopy(pairs, context * size, frequencies, 0, size);
+
+            long order0Bits = 0;
+            int used = 0;
+            for (int next = 0; next < size; next++) {
+                order0Bits += (long) frequencies[next] * order0.getLength(alphabet[next]);
+                if (frequencies[next] > 0) {
+                    used++;
+                }
+            }
+            if (used == 0) {
+                continue;
+            }
+
+            CanonicalHuffman code = CanonicalHuffman.fromFrequencies(frequencies, positionBits);
+            long contextBits = positionBits + headerBits(used, positionBits);
+            for (int next = 0; next < size; next++) {
+                contextBits += (long) frequencies[next] * code.getLength(next);
+            }
+
+            if (contextBits < order0Bits) {
+                contextCodes[context] = code;
+                contextCount++;
+            }
+        }
+        return contextCount;
+    }
+
+    /**
+     * Size of CanonicalHuffman.writeHeader for the given number of symbols.
+     */
+    private static long headerBits(int used, int symbolBits) {
+        return 5 + symbolBits + 1 + (long) used * (symbolBits + CanonicalHuffman.LENGTH_BITS);
+    }
+
+    /**
+     * The chars with a code, in increasing order.
+     */
+    private static int[] alphabet(CanonicalHuffman order0) {
+        int size = 0;
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (order0.getLength(c) > 0) {
+                size++;
+            }
+        }
+        int[] alphabet = new int[size];
+        for (int c = 0, i = 0; c <= Character.MAX_VALUE; c++) {
+            if (order0.getLength(c) > 0) {
+                alphabet[i++] = c;
+            }
+        }
+        return alphabet;
+    }
+
+    private static int positionBits(int alphabetSize) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(alphabetSize - 1));
+    }
+
+    /**
+     * Decode the output of encode. Corrupt input throws
+     * IllegalArgumentException.
+     */
+    public static String decode(byte[] encoded) {
+        BitReader bits = new BitReader(encoded);
+        CanonicalHuffman order0 = CanonicalHuffman.readHeader(bits);
+        if (order0.getSymbolBits() != 16) {
+            throw new IllegalArgumentException("Order-0 code is not over chars");
+        }
+        int[] alphabet = alphabet(order0);
+        int[] position = new int[Character.MAX_VALUE + 1];
+        for (int i = 0; i < alphabet.length; i++) {
+            position[alphabet[i]] = i;
+        }
+        int positionBits = positionBits(alphabet.length);
+
+        long length = bits.read(32);
+        int contextCount = (int) bits.read(positionBits + 1);
+        CanonicalHuffman[] contextCodes = new CanonicalHuffman[alphabet.length];
+        for (int i = 0; i < contextCount; i++) {
+            int context = (int) bits.read(positionBits);
+            if (context < 0 || context >= alphabet.length) {
+                throw new IllegalArgumentException("Invalid context " + context);
+            }
+            contextCodes[context] = CanonicalHuffman.readHeader(bits);
+        }
+
+        // Every character takes at least one bit
+        if (length > 8L * encoded.length - bits.getBitsConsumed()) {
+            throw new IllegalArgumentException("Length " + length + " is longer than the input");
+        }
+
+        char[] decoded = new char[(int) length];
+        for (int i = 0; i < length; i++) {
+            CanonicalHuffman code = i == 0 ? null : contextCodes[position[decoded[i - 1]]];
+            if (code == null) {
+                decoded[i] = (char) order0.decode(bits);
+                continue;
+            }
+            int next = code.decode(bits);
+            if (next >= alphabet.length) {
+                throw new IllegalArgumentException("Invalid code in input");
+            }
+            decoded[i] = (char) alphabet[next];
+        }
+        return new String(decoded);
+    }
+}
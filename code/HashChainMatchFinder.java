@@ -0,0 +1,98 @@
+import java.util.*;
+
+/**
+ * Hash chain match finder, as used by zlib. The first MIN_MATCH bytes at each
+ * position are hashed; head holds the latest position with each hash, and
+ * prev links every position in the window to the previous one with the same
+ * hash. A search walks that chain, newest first, for at most maxChain
+ * candidates, so it costs a bounded amount of work however large the window.
+ * It stops as soon as it finds a match of niceLength, which is usually as good
+ * as a longer one is going to get.
+ */
+public class HashChainMatchFinder implements MatchFinder {
+
+    static final int HASH_BITS = 16;
+
+    private final byte[] data;
+    private final int end;
+    private final int windowSize; // A power of two; distances are below it
+    private final int maxChain;
+    private final int niceLength;
+    private final int maxMatch;
+
+    private final int[] head = new int[1 << HASH_BITS];
+    private final int[] prev;
+
+    public HashChainMatchFinder(byte[] data, int end, int windowSize, int maxChain, int maxMatch) {
+        this(data, end, windowSize, maxChain, maxMatch, maxMatch);
+    }
+
+    public HashChainMatchFinder(byte[] data, int end, int windowSize, int maxChain, int niceLength, int maxMatch) {
+        if (Integer.bitCount(windowSize) != 1) {
+            throw new IllegalArgumentException("Window size must be a power of two");
+        }
+        this.data = data;
+        this.end = end;
+        this.windowSize = windowSize;
+        this.maxChain = maxChain;
+        this.niceLength = niceLength;
+        this.maxMatch = maxMatch;
+        // Short inputs never fill the window, so only size the chain for them
+        this.prev = new int[Math.min(windowSize, Integer.highestOneBit(Math.max(end - 1, 1)) << 1)];
+        Arrays.fill(head, -1);
+    }
+
+    @Override
+    public long findAndInsert(int pos) {
+        if (pos + LempelZivCompress.MIN_MATCH > end) {
+            return 0;
+        }
+
+        int hash = hash(pos);
+        int candidate = head[hash];
+        prev[pos & (prev.length - 1)] = candidate;
+        head[hash] = pos;
+
+        int limit = Math.min(maxMatch, end - pos);
+        int nice = Math.min(niceLength, limit);
+        int bestLength = 0;
+        int bestDistance = 0;
+        int chain = maxChain;
+
+        while (candidate >= 0 && pos - candidate < windowSize && chain-- > 0) {
+            // A longer match must agree at the end of the best so far, so check there first
+            if (data[candidate + bestLength] == data[pos + bestLength]) {
+                int length = LempelZivCompress.matchLength(data, candidate, pos, 0, limit);
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestDistance = pos - candidate;
+                    if (length >= nice) {
+                        break;
+                    }
+                }
+            }
+
+            int next = prev[candidate & (prev.length - 1)];
+            if (next >= candidate) {
+                break; // Slot reused by a newer position, the chain ends here
+            }
+            candidate = next;
+        }
+
+        return bestLength >= LempelZivCompress.MIN_MATCH ? MatchFinder.match(bestDistance, bestLength) : 0;
+    }
+
+    @Override
+    public void insert(int pos) {
+        if (pos + LempelZivCompress.MIN_MATCH <= end) {
+            int hash = hash(pos);
+            prev[pos & (prev.length - 1)] = head[hash];
+            head[hash] = pos;
+        }
+    }
+
+    private int hash(int pos) {
+        int key = (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8 | (data[pos + 2] & 0xFF) << 16;
+        return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+}
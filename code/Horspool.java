@@ -0,0 +1,97 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Boyer-Moore-Horspool substring search. The pattern is compared right to
+ * left, and on a mismatch the window is shifted by an amount looked up from
+ * the text character under the last position of the window, so long patterns
+ * skip most of the text. The worst case is O(text * pattern), so KMP remains
+ * the guaranteed linear choice (see SearchEngine.choose).
+ */
+public class Horspool {
+
+    public static final SearchEngine ENGINE = new SearchEngine() {
+        @Override
+        public int search(String text, String pattern) {
+            return Horspool.search(text, pattern);
+        }
+
+        @Override
+        public void searchAll(String text, String pattern, IntConsumer matches) {
+            Horspool.searchAll(text, pattern, matches);
+        }
+
+        @Override
+        public String toString() {
+            return "Horspool";
+        }
+    };
+
+    // Size of the shift table, characters are hashed into it by their low bits
+    static final int SHIFT_TABLE_SIZE = 256;
+
+    /**
+     * Return the starting index of the first match, or -1 if there is none.
+     */
+    public static int search(String text, String pattern) {
+        int m = pattern.length();
+        KMP.checkPattern(m);
+
+        int[] shiftTable = buildShiftTable(pattern);
+        int k = 0; // Start of the current window in text
+
+        while (k <= text.length() - m) {
+            int i = m - 1; // Compare from the end of the pattern
+            while (i >= 0 && pattern.charAt(i) == text.charAt(k + i)) {
+                i--;
+            }
+            if (i < 0) {
+                return k; // Found string
+            }
+            k = k + shiftTable[text.charAt(k + m - 1) & (SHIFT_TABLE_SIZE - 1)];
+        }
+
+        return -1; // Failed to find string
+    }
+
+    /**
+     * Pass the starting index of every match to the consumer.
+     */
+    public static void searchAll(String text, String pattern, IntConsumer matches) {
+        int m = pattern.length();
+        KMP.checkPattern(m);
+
+        int[] shiftTable = buildShiftTable(pattern);
+        int k = 0;
+
+        while (k <= text.length() - m) {
+            int i = m - 1;
+            while (i >= 0 && pattern.charAt(i) == text.charAt(k + i)) {
+                i--;
+            }
+            if (i < 0) {
+                matches.accept(k);
+            }
+            k = k + shiftTable[text.charAt(k + m - 1) & (SHIFT_TABLE_SIZE - 1)];
+        }
+    }
+
+    /**
+     * For each character, the distance from its last occurrence in the
+     * pattern (ignoring the final position) to the end of the pattern, or the
+     * pattern length if it does not occur. Characters sharing a table slot
+     * keep the smallest distance, so a shift can never skip a match.
+     */
+    public static int[] buildShiftTable(String pattern) {
+        int m = pattern.length();
+        KMP.checkPattern(m);
+        int[] shiftTable = new int[SHIFT_TABLE_SIZE];
+        Arrays.fill(shiftTable, m);
+
+        // Later positions give smaller distances, so they overwrite earlier ones
+        for (int i = 0; i < m - 1; i++) {
+            shiftTable[pattern.charAt(i) & (SHIFT_TABLE_SIZE - 1)] = m - 1 - i;
+        }
+        return shiftTable;
+    }
+}
@@ -0,0 +1,306 @@
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.*;
+
+/**
+ * An immutable Huffman coder, for when the static HuffmanCoding methods and
+ * their shared tree are not enough, e.g. when several documents are coded at
+ * once on different threads. A codec is built once, from a text or from a
+ * frequency table, and can then be shared freely between threads.
+ * 
+ * The output of encode is the character count and the packed codes, without
+ * the code itself; use writeHeader/readHeader (or toHeader/fromHeader) to
+ * send the code separately, once for any number of documents.
+ */
+public final class HuffmanCodec {
+
+    private final CanonicalHuffman code;
+
+    HuffmanCodec(CanonicalHuffman code) {
+        this.code = code;
+    }
+
+    /**
+     * Build the codec for the character frequencies of the given text.
+     */
+    public static HuffmanCodec fromText(String text) {
+        return fromFrequencies(text.length() >= HuffmanCoding.PARALLEL_COUNT_THRESHOLD
+                ? HuffmanCoding.parallelCountFrequencies(text)
+                : HuffmanCoding.countFrequencies(text));
+    }
+
+    /**
+     * Build the codec from a frequency table indexed by char.
+     */
+    public static HuffmanCodec fromFrequencies(int[] frequencies) {
+        return new HuffmanCodec(CanonicalHuffman.fromFrequencies(frequencies, 16));
+    }
+
+    /**
+     * Build the codec from a frequency table, with no code longer than
+     * maxLength bits.
+     */
+    public static HuffmanCodec fromFrequencies(int[] frequencies, int maxLength) {
+        return new HuffmanCodec(new CanonicalHuffman(
+                CanonicalHuffman.limitedCodeLengths(frequencies, maxLength), 16));
+    }
+
+    /**
+     * The codes as strings of '0' and '1'.
+     */
+    public Map<Character, String> getCodes() {
+        return code.toCodeMap();
+    }
+
+    CanonicalHuffman getCanonicalCode() {
+        return code;
+    }
+
+    public byte[] encode(String text) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length() / 2 + 8);
+        try {
+            BitWriter bits = new BitWriter(bytes);
+            encode(text, bits);
+            bits.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen for a byte array
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write the character count and then the code of each character.
+     */
+    public void encode(String text, BitWriter out) throws IOException {
+        out.write(text.length(), 32);
+        encodeRange(text, 0, text.length(), out);
+    }
+
+    /**
+     * Write the code of each character of text[from, to).
+     */
+    private void encodeRange(String text, int from, int to, BitWriter out) throws IOException {
+        for (int i = from; i < to; i++) {
+            code.encode(text.charAt(i), out);
+        }
+    }
+
+    public String decode(byte[] encoded) {
+        return decode(new BitReader(encoded));
+    }
+
+    /**
+     * Read back the output of encode.
+     */
+    public String decode(BitReader in) {
+        int length = (int) in.read(32);
+        char[] decoded = new char[length];
+        for (int i = 0; i < length; i++) {
+            decoded[i] = (char) code.decode(in);
+        }
+        return new String(decoded);
+    }
+
+    public void writeHeader(BitWriter out) throws IOException {
+        code.writeHeader(out);
+    }
+
+    public static HuffmanCodec readHeader(BitReader in) {
+        return new HuffmanCodec(CanonicalHuffman.readHeader(in));
+    }
+
+    /**
+     * The code lengths header on its own, for fromHeader.
+     */
+    public byte[] toHeader() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            BitWriter bits = new BitWriter(bytes);
+            writeHeader(bits);
+            bits.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static HuffmanCodec fromHeader(byte[] header) {
+        return readHeader(new BitReader(header));
+    }
+
+    /**
+     * Encode each document as a separate task on the executor, returning the
+     * results in the same order as the documents.
+     */
+    public List<byte[]> encodeAll(List<String> documents, ExecutorService executor)
+            throws InterruptedException {
+        List<Callable<byte[]>> tasks = new ArrayList<>(documents.size());
+        for (String document : documents) {
+            tasks.add(() -> encode(document));
+        }
+        return runAll(tasks, executor);
+    }
+
+    /**
+     * Decode each encoded document as a separate task on the executor.
+     */
+    public List<String> decodeAll(List<byte[]> encoded, ExecutorService executor)
+            throws InterruptedException {
+        List<Callable<String>> tasks = new ArrayList<>(encoded.size());
+        for (byte[] document : encoded) {
+            tasks.add(() -> decode(document));
+        }
+        return runAll(tasks, executor);
+    }
+
+    /**
+     * Block format, using the common fork/join pool. See
+     * encodeBlocks(String, int, ExecutorService).
+     */
+    public byte[] encodeBlocks(String text, int blockSize) throws InterruptedException {
+        return encodeBlocks(text, blockSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Encode the text in independent blocks of blockSize characters, one task
+     * per block, so that both encoding and decoding can use every core and a
+     * single block can be decoded on its own.
+     * 
+     * Format: the text length, the block size, the block count, the offset of
+     * each block in the data, the total data length, and then the data. Each
+     * block starts on a byte boundary, so its offset is a plain byte offset
+     * (the bit offset is 8 times it); this costs under a byte per block.
+     */
+    public byte[] encodeBlocks(String text, int blockSize, ExecutorService executor)
+            throws InterruptedException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        int blockCount = (int) (((long) text.length() + blockSize - 1) / blockSize);
+
+        List<Callable<byte[]>> tasks = new ArrayList<>(blockCount);
+        for (int block = 0; block < blockCount; block++) {
+            int from = block * blockSize;
+            int to = (int) Math.min((long) from + blockSize, text.length());
+            tasks.add(() -> {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream((to - from) / 2 + 8);
+                BitWriter bits = new BitWriter(bytes);
+                encodeRange(text, from, to, bits);
+                bits.flush();
+                return bytes.toByteArray();
+            });
+        }
+        List<byte[]> blocks = runAll(tasks, executor);
+
+        int indexSize = BLOCK_HEADER_INTS + blockCount + 1;
+        int dataLength = 0;
+        for (byte[] block : blocks) {
+            dataLength += block.length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(4 * indexSize + dataLength);
+        out.putInt(text.length());
+        out.putInt(blockSize);
+        out.putInt(blockCount);
+        int offset = 0;
+        for (byte[] block : blocks) {
+            out.putInt(offset);
+            offset += block.length;
+        }
+        out.putInt(offset);
+        for (byte[] block : blocks) {
+            out.put(block);
+        }
+        return out.array();
+    }
+
+    // Ints before the block offsets: text length, block size, block count
+    private static final int BLOCK_HEADER_INTS = 3;
+
+    public String decodeBlocks(byte[] encoded) throws InterruptedException {
+        return decodeBlocks(encoded, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decode the output of encodeBlocks, one task per block, each writing its
+     * characters straight into its own part of the result.
+     */
+    public String decodeBlocks(byte[] encoded, ExecutorService executor) throws InterruptedException {
+        ByteBuffer in = ByteBuffer.wrap(encoded);
+        int length = in.getInt(0);
+        int blockSize = in.getInt(4);
+        int blockCount = in.getInt(8);
+
+        char[] decoded = new char[length];
+        List<Callable<Void>> tasks = new ArrayList<>(blockCount);
+        for (int block = 0; block < blockCount; block++) {
+            int index = block;
+            tasks.add(() -> {
+                decodeBlockInto(encoded, index, decoded, index * blockSize);
+                return null;
+            });
+        }
+        runAll(tasks, executor);
+        return new String(decoded);
+    }
+
+    /**
+     * Decode a single block of the output of encodeBlocks, without decoding
+     * any other block.
+     */
+    public String decodeBlock(byte[] encoded, int block) {
+        int blockCount = ByteBuffer.wrap(encoded).getInt(8);
+        if (block < 0 || block >= blockCount) {
+            throw new IndexOutOfBoundsException("Block " + block + " out of bounds for " + blockCount + " blocks");
+        }
+
+        char[] decoded = new char[blockLength(encoded, block)];
+        decodeBlockInto(encoded, block, decoded, 0);
+        return new String(decoded);
+    }
+
+    /**
+     * Number of characters in the given block.
+     */
+    private static int blockLength(byte[] encoded, int block) {
+        ByteBuffer in = ByteBuffer.wrap(encoded);
+        int length = in.getInt(0);
+        int blockSize = in.getInt(4);
+        return (int) Math.min(blockSize, (long) length - (long) block * blockSize);
+    }
+
+    /**
+     * Decode the given block into decoded, starting at offset.
+     */
+    private void decodeBlockInto(byte[] encoded, int block, char[] decoded, int offset) {
+        ByteBuffer in = ByteBuffer.wrap(encoded);
+        int blockCount = in.getInt(8);
+        int dataStart = 4 * (BLOCK_HEADER_INTS + blockCount + 1);
+        int start = in.getInt(4 * (BLOCK_HEADER_INTS + block));
+        int end = in.getInt(4 * (BLOCK_HEADER_INTS + block + 1));
+
+        BitReader bits = new BitReader(encoded, dataStart + start, end - start);
+        int to = offset + blockLength(encoded, block);
+        for (int i = offset; i < to; i++) {
+            decoded[i] = (char) code.decode(bits);
+        }
+    }
+
+    private static <T> List<T> runAll(List<Callable<T>> tasks, ExecutorService executor)
+            throws InterruptedException {
+        List<T> results = new ArrayList<>(tasks.size());
+        for (Future<T> future : executor.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+        return results;
+    }
+}
@@ -1,5 +1,7 @@
 import java.util.*;
 import java.io.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * A new instance of HuffmanCoding is created for every run. The constructor is
@@ -15,7 +17,9 @@ public class HuffmanCoding {
                                "the input file name and either 0 for constructing tree and printing it, or " +
                                "1 for constructing the tree and encoding the file and printing it, or " +
                                "2 for constructing the tree, encoding the file, and then decoding it and " +
-                               "printing the result which should be the same as the input file.");
+                               "printing the result which should be the same as the input file, or " +
+                               "3 for doing the same as 2 using real bit-packed output, or " +
+                               "4 for printing coding metrics as a single line.");
         } else {
             try {
                 Scanner s = new Scanner(new File(args[0]));
@@ -36,8 +40,16 @@ public class HuffmanCoding {
                     String codedText = encode(fileText.toString());
                      // DO NOT just change this code to simply print fileText.toString() back. ;-)
                     System.out.println(decode(codedText));
+                } else if (args[1].equals("3")) {
+                    constructTree(fileText.toString()); // initialises the tree field.
+                    byte[] packed = encodePacked(fileText.toString());
+                    System.out.println("Packed " + fileText.length() + " characters into " +
+                                       packed.length + " bytes");
+                    System.out.println(decodePacked(packed));
+                } else if (args[1].equals("4")) {
+                    System.out.println(HuffmanMetrics.measure(fileText.toString()).toSummaryLine());
                 } else {
-                    System.out.println("Unknown second argument: should be 0 or 1 or 2");
+                    System.out.println("Unknown second argument: should be 0, 1, 2, 3 or 4");
                 }
             } catch (FileNotFoundException e) {
                 System.out.println("Unable to find file called " + args[0]);
@@ -56,15 +68,51 @@ public class HuffmanCoding {
         // TODO Construct the ACTUAL HuffmanTree here to use with both encode and decode below.
         // TODO fill this in.
 
-        Map<Character, Integer> frequencyTable = getFrequencyTable(text);
+        long start = HuffmanMetrics.startTimer();
+        int[] frequencies = text.length() >= PARALLEL_COUNT_THRESHOLD
+                ? parallelCountFrequencies(text)
+                : countFrequencies(text);
+        HuffmanMetrics.recordCount(start);
+        return constructTree(frequencies);
+    }
+
+    /**
+     * Construct the tree from a frequency table indexed by char, as returned
+     * by countFrequencies. Initialises the same fields as constructTree.
+     */
+    public static Map<Character, String> constructTree(int[] frequencies) {
+        // Final node is root of tree
+        long start = HuffmanMetrics.startTimer();
+        HuffmanNode root = buildTree(frequencies);
+        ROOT = root;
+        start = HuffmanMetrics.recordTree(start);
+
+        // Traverse this tree to assign codes:
+        // If a node has code c, assign c0 to the left child and c1 to the right child
+        Map<Character, String> charCodes = new HashMap<>();
+        if (root != null) { // Empty text has no tree and no codes
+            assignCodes(root, charCodes);
+        }
+        tree = charCodes;
+        HuffmanMetrics.recordCodes(start, frequencies, charCodes);
+        
+        return charCodes;
+    }
+
+    /**
+     * Build the Huffman tree for a frequency table indexed by char and return
+     * its root, without touching the static fields. Returns null if no char
+     * has a non-zero frequency.
+     */
+    static HuffmanNode buildTree(int[] frequencies) {
         PriorityQueue<HuffmanNode> priorityQueue = new PriorityQueue<>();
 
         // Construct leaf node for each symbol
         // Put these nodes into a priority queue, with frequency as priority
-        for (Map.Entry<Character, Integer> entry : frequencyTable.entrySet()) {
-            Character charValue = entry.getKey();
-            Integer frequency = entry.getValue();
-            priorityQueue.offer(new HuffmanNode(charValue, frequency));
+        for (int c = 0; c < frequencies.length; c++) {
+            if (frequencies[c] > 0) {
+                priorityQueue.offer(new HuffmanNode((char) c, frequencies[c]));
+            }
         }
 
         // Construct tree
@@ -85,19 +133,102 @@ public class HuffmanCoding {
             priorityQueue.offer(parentNode);
         }
 
-        // Final node is root of tree
-        HuffmanNode root = priorityQueue.poll();
-        ROOT = root;
+        return priorityQueue.poll();
+    }
 
-        // Traverse this tree to assign codes:
-        // If a node has code c, assign c0 to the left child and c1 to the right child
+    /**
+     * The codes of the Huffman tree for a frequency table indexed by char,
+     * without touching the static fields; empty if no char has a non-zero
+     * frequency. This is how classes in other files get tree codes, as they
+     * cannot refer to HuffmanNode.
+     */
+    static Map<Character, String> treeCodes(int[] frequencies) {
+        HuffmanNode root = buildTree(frequencies);
         Map<Character, String> charCodes = new HashMap<>();
-        assignCodes(root, charCodes);
+        if (root != null) {
+            assignCodes(root, charCodes);
+        }
+        return charCodes;
+    }
+
+    /**
+     * Canonical code mode: construct the tree as above, then replace its codes
+     * with the canonical codes of the same lengths (see CanonicalHuffman). The
+     * code can then be sent as just its code lengths. Like constructTree, this
+     * initialises the fields used by encode and decode.
+     */
+    public static Map<Character, String> constructCanonicalTree(String text) {
+        Map<Character, String> treeCodes = constructTree(text);
+        if (treeCodes.size() < 2) {
+            return treeCodes; // A single leaf has no code to make canonical
+        }
+        return useCanonicalCode(CanonicalHuffman.fromCodes(treeCodes), countFrequencies(text));
+    }
+
+    /**
+     * Length-limited code mode: like constructCanonicalTree, but no code is
+     * longer than maxLength bits (e.g. 15, as in DEFLATE), so decoders can use
+     * fixed-size lookup tables. The code lengths come from
+     * CanonicalHuffman.limitedCodeLengths instead of the tree, and cost a
+     * little compression only when the tree would have been deeper.
+     */
+    public static Map<Character, String> constructLimitedTree(String text, int maxLength) {
+        int[] frequencies = countFrequencies(text);
+        int used = 0;
+        for (int f : frequencies) {
+            if (f > 0) {
+                used++;
+            }
+        }
+        if (used < 2) {
+            return constructTree(text); // As in constructCanonicalTree, a single leaf has no code to limit
+        }
+        int[] lengths = CanonicalHuffman.limitedCodeLengths(frequencies, maxLength);
+        return useCanonicalCode(new CanonicalHuffman(lengths, 16), frequencies);
+    }
+
+    /**
+     * Make the given canonical code the one used by encode and decode.
+     */
+    private static Map<Character, String> useCanonicalCode(CanonicalHuffman code, int[] frequencies) {
+        Map<Character, String> charCodes = code.toCodeMap();
+
+        // Rebuild the decoding tree to follow the canonical codes
+        List<Map.Entry<Character, String>> entries = new ArrayList<>(charCodes.entrySet());
+        entries.sort(Map.Entry.comparingByValue());
+        ROOT = buildCodeTree(entries, 0, entries.size(), 0, frequencies);
         tree = charCodes;
-        
+
         return charCodes;
     }
 
+    /**
+     * Build the subtree for entries[from, to), which are sorted by code and all
+     * share their first depth bits.
+     */
+    private static HuffmanNode buildCodeTree(List<Map.Entry<Character, String>> entries, int from, int to,
+                                             int depth, int[] frequencies) {
+        Map.Entry<Character, String> first = entries.get(from);
+        if (to - from == 1 && first.getValue().length() <= depth) {
+            HuffmanNode leaf = new HuffmanNode(first.getKey(), frequencies[first.getKey()]);
+            leaf.setCode(first.getValue());
+            return leaf;
+        }
+
+        // Codes with a 0 at this depth come before those with a 1
+        int split = from;
+        while (split < to && entries.get(split).getValue().charAt(depth) == '0') {
+            split++;
+        }
+        HuffmanNode leftNode = buildCodeTree(entries, from, split, depth + 1, frequencies);
+        HuffmanNode rightNode = buildCodeTree(entries, split, to, depth + 1, frequencies);
+        HuffmanNode parentNode = new HuffmanNode(leftNode, rightNode);
+        leftNode.setParent(parentNode);
+        rightNode.setParent(parentNode);
+        parentNode.setCode(first.getValue().substring(0, depth));
+        return parentNode;
+    }
+
     public static void assignCodes(HuffmanNode node, Map<Character, String> charCodes) {
         if (node.getLeftChild() == null && node.getRightChild() == null) {
             charCodes.put(node.getCharValue(), node.getCode());
@@ -126,6 +257,88 @@ public class HuffmanCoding {
         }
         return frequencyTable;
     }
+
+    /**
+     * Count how often each char occurs, in an array indexed by char. Reads the
+     * text in place, with no copying or boxing.
+     */
+    public static int[] countFrequencies(CharSequence text) {
+        return countFrequencies(text, 0, text.length());
+    }
+
+    /**
+     * Count the chars in text[from, to).
+     */
+    public static int[] countFrequencies(CharSequence text, int from, int to) {
+        int[] frequencies = new int[Character.MAX_VALUE + 1];
+        for (int i = from; i < to; i++) {
+            frequencies[text.charAt(i)]++;
+        }
+        return frequencies;
+    }
+
+    /**
+     * Count how often each byte value occurs in data[offset, offset + length),
+     * in an array indexed by the unsigned byte value.
+     */
+    public static int[] countFrequencies(byte[] data, int offset, int length) {
+        int[] frequencies = new int[256];
+        for (int i = offset; i < offset + length; i++) {
+            frequencies[data[i] & 0xFF]++;
+        }
+        return frequencies;
+    }
+
+    /**
+     * Parallel version of countFrequencies. The text is split into chunks
+     * which are counted into separate histograms on the common fork/join pool,
+     * then the histograms are added together.
+     */
+    public static int[] parallelCountFrequencies(CharSequence text) {
+        return ForkJoinPool.commonPool().invoke(new FrequencyTask(text, 0, text.length()));
+    }
+
+    // Text length from which constructTree counts frequencies in parallel
+    static final int PARALLEL_COUNT_THRESHOLD = 4 << 20;
+
+    // Chars counted by one task of parallelCountFrequencies
+    static final int COUNT_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * Counts text[start, end), splitting the range in half until it is small
+     * enough to count directly.
+     */
+    private static class FrequencyTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final CharSequence text;
+        private final int start;
+        private final int end;
+
+        FrequencyTask(CharSequence text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (end - start <= COUNT_CHUNK_SIZE) {
+                return countFrequencies(text, start, end);
+            }
+
+            int mid = start + (end - start) / 2;
+            FrequencyTask left = new FrequencyTask(text, start, mid);
+            left.fork();
+            int[] frequencies = new FrequencyTask(text, mid, end).compute();
+            int[] leftFrequencies = left.join();
+
+            for (int c = 0; c < frequencies.length; c++) {
+                frequencies[c] += leftFrequencies[c];
+            }
+            return frequencies;
+        }
+    }
     
     /**
      * Take an input string, text, and encode it with the tree computed from the text. Should
@@ -135,15 +348,59 @@ public class HuffmanCoding {
     public static String encode(String text) {
         // TODO fill this in.
 
+        long start = HuffmanMetrics.startTimer();
         StringBuilder encodeString = new StringBuilder();
 
         for (char c : text.toCharArray()) {
             encodeString.append(tree.get(c));
         }
 
+        HuffmanMetrics.recordEncode(start, encodeString.length());
         return encodeString.toString();
     }
     
+    /**
+     * Take an input string, text, and encode it with the tree computed from the
+     * text, packing the codes into real bits rather than '0' and '1'
+     * characters.
+     * 
+     * The output starts with a header holding the code length of each
+     * character and the number of characters, so it can be decoded without the
+     * tree. The codes are the canonical codes with the same lengths as the
+     * tree's codes, so the output is the same size as the tree would give.
+     */
+    public static byte[] encodePacked(String text) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length() / 2 + 16);
+        try {
+            encodePacked(text, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen for a byte array
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Version of encodePacked writing to a stream. The stream is flushed but
+     * not closed.
+     */
+    public static void encodePacked(String text, OutputStream out) throws IOException {
+        HuffmanCodec codec = new HuffmanCodec(CanonicalHuffman.fromCodes(tree));
+        BitWriter bits = new BitWriter(out);
+
+        codec.writeHeader(bits);
+        codec.encode(text, bits);
+        bits.flush();
+    }
+
+    /**
+     * Decode the output of encodePacked. Needs no stored tree, as the code
+     * is rebuilt from the header.
+     */
+    public static String decodePacked(byte[] packed) {
+        BitReader bits = new BitReader(packed);
+        return HuffmanCodec.readHeader(bits).decode(bits);
+    }
+
     /**
      * Take encoded input as a binary string, decode it using the stored tree,
      * and return the decoded text as a text string.
@@ -151,6 +408,7 @@ public class HuffmanCoding {
     public static String decode(String encoded) {
         // TODO fill this in.
 
+        long start = HuffmanMetrics.startTimer();
         StringBuilder decodeString = new StringBuilder();
         HuffmanNode pointer = ROOT;
 
@@ -172,6 +430,7 @@ public class HuffmanCoding {
             }
         }
 
+        HuffmanMetrics.recordDecode(start);
         return decodeString.toString();
     }
 }
@@ -183,6 +442,7 @@ class HuffmanNode implements Comparable<HuffmanNode> {
     char charValue; 
     int frequency; // Number of times present in text
     String code = ""; // Unique code
+    char lowestChar; // Lowest char in this subtree, used to break ties in compareTo
     
     HuffmanNode leftChild;
     HuffmanNode rightChild;
@@ -192,6 +452,7 @@ class HuffmanNode implements Comparable<HuffmanNode> {
     public HuffmanNode(char charValue, int frequency) {
         this.charValue = charValue;
         this.frequency = frequency;
+        this.lowestChar = charValue;
     }
 
     // Assigns two children nodes 
@@ -201,23 +462,13 @@ class HuffmanNode implements Comparable<HuffmanNode> {
         this.rightChild = rightChild;
         this.frequency = leftChild.getFrequency() + rightChild.getFrequency();
 
+        // Children are never changed after this, so the lowest char can be cached
+        // here instead of walking the whole subtree on every comparison
+        this.lowestChar = (char) Math.min(leftChild.lowestChar, rightChild.lowestChar);
     }
 
     // Matching frequencies
     public char findLowestValueChar() {
-        if (this.getLeftChild() == null && this.getRightChild() == null) {
-            return this.getCharValue();
-        }
-
-        char left = this.getLeftChild().findLowestValueChar();
-        char right = this.getRightChild().findLowestValueChar();
-
-        char lowestChar;
-        if (Character.compare(left, right) < 0) {
-            lowestChar = left;
-        } else {
-            lowestChar = right;
-        }
         return lowestChar;
     }
 
@@ -230,8 +481,8 @@ class HuffmanNode implements Comparable<HuffmanNode> {
         } else if (curr.getFrequency() > other.getFrequency()) {
             return 1;
         } else {
-            char currLowest = curr.findLowestValueChar();
-            char otherLowest = other.findLowestValueChar();
+            char currLowest = curr.lowestChar;
+            char otherLowest = other.lowestChar;
             int val = Character.compare(currLowest, otherLowest);
 
             if (val < 0) {
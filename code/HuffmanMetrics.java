@@ -0,0 +1,413 @@
+import java.util.*;
+import java.lang.management.ManagementFactory;
+import javax.management.*;
+
+/**
+ * Measurements of a run of the Huffman coder over a text: how close the code
+ * gets to the Shannon entropy, the compression achieved, the depth of the
+ * tree, and the time taken by each phase.
+ * 
+ * Metrics are opt-in. While enabled, HuffmanCoding's own constructTree, encode
+ * and decode record into the latest result as they run, so a production run
+ * is measured as it is, not repeated. When disabled each phase costs one
+ * volatile read. Results can be printed as a single key=value line
+ * (toSummaryLine), and the latest result is also available over JMX once
+ * registerMBean has been called.
+ */
+public final class HuffmanMetrics {
+
+    static final String MBEAN_NAME = "comp261:type=HuffmanMetrics";
+
+    private static volatile boolean enabled;
+    private static volatile HuffmanMetrics latest;
+
+    // Timings of a tree being constructed, until its codes are recorded
+    private static long pendingCountNanos;
+    private static long pendingTreeNanos;
+
+    private final int chars;
+    private final long inputBytes; // UTF-8 size of the text
+    private final long outputBytes; // Size of the encoded bits packed into bytes, 0 until encoded
+    private final int symbols;
+    private final double entropy; // Bits per character
+    private final double averageCodeLength; // Bits per character
+    private final int treeDepth;
+    private final long countNanos;
+    private final long treeNanos;
+    private final long codesNanos;
+    private final long encodeNanos;
+    private final long decodeNanos;
+
+    private HuffmanMetrics(int chars, long inputBytes, long outputBytes, int symbols, double entropy,
+                           double averageCodeLength, int treeDepth, long countNanos, long treeNanos,
+                           long codesNanos, long encodeNanos, long decodeNanos) {
+        this.chars = chars;
+        this.inputBytes = inputBytes;
+        this.outputBytes = outputBytes;
+        this.symbols = symbols;
+        this.entropy = entropy;
+        this.averageCodeLength = averageCodeLength;
+        this.treeDepth = treeDepth;
+        this.countNanos = countNanos;
+        this.treeNanos = treeNanos;
+        this.codesNanos = codesNanos;
+        this.encodeNanos = encodeNanos;
+        this.decodeNanos = decodeNanos;
+    }
+
+    /**
+     * Start recording HuffmanCoding runs.
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Run HuffmanCoding over the text (constructTree, encode and decode) with
+     * recording enabled for the run, and return what was recorded. Like any
+     * run, this replaces HuffmanCoding's current tree.
+     */
+    public static HuffmanMetrics measure(String text) {
+        boolean wasEnabled = enabled;
+        enabled = true;
+        try {
+            HuffmanCoding.constructTree(text);
+            HuffmanCoding.decode(HuffmanCoding.encode(text));
+        } finally {
+            enabled = wasEnabled;
+        }
+        return latest;
+    }
+
+    // Called by HuffmanCoding around each phase. A start of 0 means recording
+    // was disabled when the phase started, and the phase is not recorded; this
+    // is checked before taking the lock, so disabled phases never contend.
+
+    static long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    static void recordCount(long start) {
+        if (start != 0) {
+            storeCount(System.nanoTime() - start);
+        }
+    }
+
+    private static synchronized void storeCount(long nanos) {
+        pendingCountNanos = nanos;
+    }
+
+    /**
+     * Returns the start time for the codes phase that follows.
+     */
+    static long recordTree(long start) {
+        if (start == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        storeTree(now - start);
+        return now;
+    }
+
+    private static synchronized void storeTree(long nanos) {
+        pendingTreeNanos = nanos;
+    }
+
+    static void recordCodes(long start, int[] frequencies, Map<Character, String> charCodes) {
+        if (start != 0) {
+            storeCodes(System.nanoTime() - start, frequencies, charCodes);
+        }
+    }
+
+    /**
+     * Record the codes phase, and with it a new result for the tree: its
+     * statistics, and the count and tree timings recorded just before.
+     */
+    private static synchronized void storeCodes(long codesNanos, int[] frequencies,
+                                                Map<Character, String> charCodes) {
+        // Entropy and average code length, both in bits per character
+        long chars = 0;
+        long inputBytes = 0;
+        for (int c = 0; c < frequencies.length; c++) {
+            chars += frequencies[c];
+            inputBytes += (long) frequencies[c] * utf8Length((char) c);
+        }
+        double entropy = 0;
+        long codedBits = 0;
+        int depth = 0;
+        for (Map.Entry<Character, String> entry : charCodes.entrySet()) {
+            int frequency = frequencies[entry.getKey()];
+            double p = (double) frequency / chars;
+            entropy -= p * Math.log(p) / Math.log(2);
+            codedBits += (long) frequency * entry.getValue().length();
+            depth = Math.max(depth, entry.getValue().length());
+        }
+        double averageCodeLength = chars == 0 ? 0 : (double) codedBits / chars;
+
+        latest = new HuffmanMetrics((int) chars, inputBytes, 0, charCodes.size(), entropy, averageCodeLength,
+                depth, pendingCountNanos, pendingTreeNanos, codesNanos, 0, 0);
+        pendingCountNanos = 0;
+        pendingTreeNanos = 0;
+    }
+
+    static void recordEncode(long start, long encodedBits) {
+        if (start != 0) {
+            storeEncode(System.nanoTime() - start, encodedBits);
+        }
+    }
+
+    private static synchronized void storeEncode(long nanos, long encodedBits) {
+        HuffmanMetrics m = latest;
+        if (m != null) {
+            latest = new HuffmanMetrics(m.chars, m.inputBytes, (encodedBits + 7) / 8, m.symbols, m.entropy,
+                    m.averageCodeLength, m.treeDepth, m.countNanos, m.treeNanos, m.codesNanos,
+                    nanos, m.decodeNanos);
+        }
+    }
+
+    static void recordDecode(long start) {
+        if (start != 0) {
+            storeDecode(System.nanoTime() - start);
+        }
+    }
+
+    private static synchronized void storeDecode(long nanos) {
+        HuffmanMetrics m = latest;
+        if (m != null) {
+            latest = new HuffmanMetrics(m.chars, m.inputBytes, m.outputBytes, m.symbols, m.entropy,
+                    m.averageCodeLength, m.treeDepth, m.countNanos, m.treeNanos, m.codesNanos,
+                    m.encodeNanos, nanos);
+        }
+    }
+
+    private static int utf8Length(char c) {
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800) {
+            return 2;
+        } else if (Character.isSurrogate(c)) {
+            return 2; // Half of a 4 byte pair
+        } else {
+            return 3;
+        }
+    }
+
+    /**
+     * The most recent result recorded, or null if nothing has been recorded.
+     */
+    public static HuffmanMetrics getLatest() {
+        return latest;
+    }
+
+    public int getChars() {
+        return chars;
+    }
+
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    public int getSymbols() {
+        return symbols;
+    }
+
+    public double getEntropy() {
+        return entropy;
+    }
+
+    public double getAverageCodeLength() {
+        return averageCodeLength;
+    }
+
+    /**
+     * Average code length over entropy: 1 is optimal for a symbol code. With a
+     * single symbol the entropy is 0, so this is infinite, or NaN (undefined)
+     * if the codes are empty too.
+     */
+    public double getEfficiency() {
+        return averageCodeLength / entropy;
+    }
+
+    /**
+     * Input size over output size, so higher is better.
+     */
+    public double getCompressionRatio() {
+        return outputBytes == 0 ? 0 : (double) inputBytes / outputBytes;
+    }
+
+    public int getTreeDepth() {
+        return treeDepth;
+    }
+
+    public long getCountNanos() {
+        return countNanos;
+    }
+
+    public long getTreeNanos() {
+        return treeNanos;
+    }
+
+    public long getCodesNanos() {
+        return codesNanos;
+    }
+
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * All metrics on one line of space separated key=value pairs.
+     */
+    public String toSummaryLine() {
+        return String.format(Locale.ROOT,
+                "huffman chars=%d inputBytes=%d outputBytes=%d symbols=%d entropy=%.6f "
+                + "avgCodeLength=%.6f efficiency=%.6f ratio=%.6f treeDepth=%d "
+                + "countNs=%d treeNs=%d codesNs=%d encodeNs=%d decodeNs=%d",
+                chars, inputBytes, outputBytes, symbols, entropy, averageCodeLength, getEfficiency(),
+                getCompressionRatio(), treeDepth, countNanos, treeNanos, codesNanos, encodeNanos,
+                decodeNanos);
+    }
+
+    @Override
+    public String toString() {
+        return toSummaryLine();
+    }
+
+    /**
+     * Register an MBean exposing the latest metrics with the platform MBean
+     * server, if it is not registered already.
+     */
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new Latest(), name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to register " + MBEAN_NAME, e);
+        }
+    }
+
+    /**
+     * JMX view of the latest metrics. Values are 0 until something has been
+     * measured.
+     */
+    public interface HuffmanMetricsMXBean {
+        int getChars();
+        long getInputBytes();
+        long getOutputBytes();
+        int getSymbols();
+        double getEntropy();
+        double getAverageCodeLength();
+        double getEfficiency();
+        double getCompressionRatio();
+        int getTreeDepth();
+        long getCountNanos();
+        long getTreeNanos();
+        long getCodesNanos();
+        long getEncodeNanos();
+        long getDecodeNanos();
+        String getSummaryLine();
+    }
+
+    private static class Latest implements HuffmanMetricsMXBean {
+        private static final HuffmanMetrics NONE = new HuffmanMetrics(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        private HuffmanMetrics get() {
+            HuffmanMetrics metrics = latest;
+            return metrics == null ? NONE : metrics;
+        }
+
+        @Override
+        public int getChars() {
+            return get().getChars();
+        }
+
+        @Override
+        public long getInputBytes() {
+            return get().getInputBytes();
+        }
+
+        @Override
+        public long getOutputBytes() {
+            return get().getOutputBytes();
+        }
+
+        @Override
+        public int getSymbols() {
+            return get().getSymbols();
+        }
+
+        @Override
+        public double getEntropy() {
+            return get().getEntropy();
+        }
+
+        @Override
+        public double getAverageCodeLength() {
+            return get().getAverageCodeLength();
+        }
+
+        @Override
+        public double getEfficiency() {
+            return get().getEfficiency();
+        }
+
+        @Override
+        public double getCompressionRatio() {
+            return get().getCompressionRatio();
+        }
+
+        @Override
+        public int getTreeDepth() {
+            return get().getTreeDepth();
+        }
+
+        @Override
+        public long getCountNanos() {
+            return get().getCountNanos();
+        }
+
+        @Override
+        public long getTreeNanos() {
+            return get().getTreeNanos();
+        }
+
+        @Override
+        public long getCodesNanos() {
+            return get().getCodesNanos();
+        }
+
+        @Override
+        public long getEncodeNanos() {
+            return get().getEncodeNanos();
+        }
+
+        @Override
+        public long getDecodeNanos() {
+            return get().getDecodeNanos();
+        }
+
+        @Override
+        public String getSummaryLine() {
+            return get().toSummaryLine();
+        }
+    }
+}
@@ -1,13 +1,61 @@
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
 
 public class KMP {
 
+    public static final SearchEngine ENGINE = new SearchEngine() {
+        @Override
+        public int search(String text, String pattern) {
+            return KMP.search(text, pattern);
+        }
+
+        @Override
+        public void searchAll(String text, String pattern, IntConsumer matches) {
+            KMP.searchAll(text, pattern, matches);
+        }
+
+        @Override
+        public String toString() {
+            return "KMP";
+        }
+    };
+
+    // Size of each region of a file mapped into memory at once when streaming
+    static final int MAP_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    // Text length below which a parallel search task runs sequentially
+    static final int PARALLEL_CHUNK_SIZE = 1 << 20;
+
+    // Flags for the search variants taking a flags argument
+    public static final int CASE_INSENSITIVE = 1; // Compare characters ignoring case
+    public static final int WILDCARD = 2; // WILDCARD_CHAR in the pattern matches any character
+
+    public static final char WILDCARD_CHAR = '?';
+
     public static void main(String[] args) {
-        if (args.length != 2) {
+        if (args.length == 3 && args[2].equals("stream")) {
+            // Streaming mode: reports a byte offset and never loads the whole file
+            try {
+                System.out.println(searchFile(Paths.get(args[0]), args[1]));
+            } catch (NoSuchFileException e) {
+                System.out.println("Unable to find file called " + args[0]);
+            } catch (IOException e) {
+                System.out.println("Unable to read file called " + args[0]);
+            }
+        } else if (args.length != 2) {
             System.out.println("Please call this program with " +
                                "two arguments which is the input file name " +
-                               "and the string to search.");
+                               "and the string to search, and optionally " +
+                               "\"stream\" to search the file without loading it.");
         } else {
             try {
                 Scanner s = new Scanner(new File(args[0]));
@@ -33,10 +81,17 @@ public class KMP {
      */
     public static int search(String text, String pattern) {
         // TODO
+        checkPattern(pattern.length());
 
         // Initialise jump table
         int[] jumpTableM = buildJumpTable(pattern);
+        return search(text, pattern, jumpTableM);
+    }
 
+    /**
+     * First match search using an already built jump table for the pattern.
+     */
+    static int search(String text, String pattern, int[] jumpTableM) {
         int k = 0; // Start of the current match in text
         int i = 0; // Position of the current character in pattern
 
@@ -59,11 +114,409 @@ public class KMP {
         return -1; // Failed to find string
     }
 
+    /**
+     * Perform KMP substring search for every occurrence of the pattern in the
+     * text, passing each starting index to the consumer in increasing order.
+     * 
+     * After a full match the search continues from the longest border of the
+     * pattern, so overlapping matches are found and the whole scan stays
+     * linear in the length of the text.
+     */
+    public static void searchAll(String text, String pattern, IntConsumer matches) {
+        checkPattern(pattern.length());
+        int[] jumpTableM = buildJumpTable(pattern);
+        searchRange(text, pattern, jumpTableM, fullMatchJump(pattern, jumpTableM),
+                    0, text.length(), matches);
+    }
+
+    /**
+     * Report every match lying entirely within text[from, to), using an
+     * already built jump table.
+     */
+    static void searchRange(String text, String pattern, int[] jumpTableM, int border,
+                            int from, int to, IntConsumer matches) {
+        int m = pattern.length();
+        int k = from; // Start of the current match in text
+        int i = 0; // Position of the current character in pattern
+
+        while (k + i < to) {
+            if (pattern.charAt(i) == text.charAt(k + i)) { // Match at i
+                i = i + 1;
+                if (i == m) { // Found string, keep going from its border
+                    matches.accept(k);
+                    k = k + m - border;
+                    i = border;
+                }
+            } else if (jumpTableM[i] == -1) { // Mismatch, no self overlap
+                k = k + i + 1;
+                i = 0;
+            } else { // Mismatch, with self overlap
+                k = k + i - jumpTableM[i];
+                i = jumpTableM[i];
+            }
+        }
+    }
+
+    /**
+     * Return the starting index of every occurrence of the pattern in the text.
+     */
+    public static int[] searchAll(String text, String pattern) {
+        Matches matches = new Matches();
+        searchAll(text, pattern, matches);
+        return matches.toArray();
+    }
+
+    /**
+     * Parallel version of searchAll using the common fork/join pool. The
+     * result is identical to the sequential version.
+     */
+    public static int[] parallelSearchAll(String text, String pattern) {
+        return parallelSearchAll(text, pattern, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parallel version of searchAll. The text is split into chunks which are
+     * searched as separate fork/join tasks. Each chunk is extended by
+     * pattern length - 1 characters into the next one, so a match crossing a
+     * boundary is found by exactly the chunk it starts in. Chunk results are
+     * concatenated in order.
+     */
+    public static int[] parallelSearchAll(String text, String pattern, ForkJoinPool pool) {
+        checkPattern(pattern.length());
+        if (text.length() <= PARALLEL_CHUNK_SIZE) {
+            return searchAll(text, pattern);
+        }
+
+        int[] jumpTableM = buildJumpTable(pattern);
+        int border = fullMatchJump(pattern, jumpTableM);
+        return pool.invoke(new SearchTask(text, pattern, jumpTableM, border, 0, text.length()));
+    }
+
+    /**
+     * Searches for matches starting in text[start, end), splitting the range
+     * in half until it is small enough to search directly.
+     */
+    private static class SearchTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final String text;
+        private final String pattern;
+        private final int[] jumpTableM;
+        private final int border;
+        private final int start;
+        private final int end;
+
+        SearchTask(String text, String pattern, int[] jumpTableM, int border, int start, int end) {
+            this.text = text;
+            this.pattern = pattern;
+            this.jumpTableM = jumpTableM;
+            this.border = border;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (end - start <= PARALLEL_CHUNK_SIZE) {
+                // Overlap into the next chunk so boundary matches are seen
+                int to = (int) Math.min((long) end + pattern.length() - 1, text.length());
+                Matches matches = new Matches();
+                searchRange(text, pattern, jumpTableM, border, start, to, matches);
+                return matches.toArray();
+            }
+
+            int mid = start + (end - start) / 2;
+            SearchTask left = new SearchTask(text, pattern, jumpTableM, border, start, mid);
+            SearchTask right = new SearchTask(text, pattern, jumpTableM, border, mid, end);
+            left.fork();
+            int[] rightMatches = right.compute();
+            int[] leftMatches = left.join();
+
+            int[] merged = Arrays.copyOf(leftMatches, leftMatches.length + rightMatches.length);
+            System.arraycopy(rightMatches, 0, merged, leftMatches.length, rightMatches.length);
+            return merged;
+        }
+    }
+
+    /**
+     * Length of the longest proper prefix of the whole pattern that is also a
+     * suffix of it, i.e. the jump table entry one past the end of the pattern.
+     */
+    static int fullMatchJump(String pattern, int[] jumpTableM) {
+        int last = pattern.length() - 1;
+        int j = jumpTableM[last];
+        while (j >= 0 && pattern.charAt(j) != pattern.charAt(last)) {
+            j = jumpTableM[j];
+        }
+        return j + 1;
+    }
+
+    /**
+     * Perform KMP substring search with the given flags (CASE_INSENSITIVE
+     * and/or WILDCARD). Case is folded one character at a time as the text is
+     * scanned, so the text is never copied. Returns the starting index of the
+     * first match, or -1 if there is none.
+     */
+    public static int search(String text, String pattern, int flags) {
+        checkPattern(pattern.length());
+        return searchWithFlags(text, pattern, flags, null);
+    }
+
+    /**
+     * Version of searchAll taking flags, see search(String, String, int).
+     */
+    public static void searchAll(String text, String pattern, int flags, IntConsumer matches) {
+        checkPattern(pattern.length());
+        searchWithFlags(text, pattern, flags, matches);
+    }
+
+    /**
+     * Scan for the pattern using the shift and resume tables for the flags.
+     * If matches is null, stop at and return the first match; otherwise
+     * report every match and return the first one.
+     */
+    private static int searchWithFlags(String text, String pattern, int flags, IntConsumer matches) {
+        int m = pattern.length();
+        int[][] tables = (flags & WILDCARD) != 0
+                ? buildWildcardJumpTable(pattern, flags)
+                : toShiftTables(pattern, buildJumpTable(pattern, flags), flags);
+        int[] shift = tables[0];
+        int[] resume = tables[1];
+
+        int first = -1;
+        int k = 0; // Start of the current match in text
+        int i = 0; // Position of the current character in pattern
+
+        while (k + i < text.length()) {
+            if (charsMatch(pattern.charAt(i), text.charAt(k + i), flags)) { // Match at i
+                i = i + 1;
+                if (i == m) {
+                    if (matches == null) {
+                        return k; // Found string
+                    }
+                    if (first == -1) {
+                        first = k;
+                    }
+                    matches.accept(k);
+                    k = k + shift[m];
+                    i = resume[m];
+                }
+            } else { // Mismatch, move on by the shift for i matched characters
+                k = k + shift[i];
+                i = resume[i];
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * Whether pattern character p matches text character t under the flags.
+     */
+    static boolean charsMatch(char p, char t, int flags) {
+        if (p == t) {
+            return true;
+        }
+        if ((flags & WILDCARD) != 0 && p == WILDCARD_CHAR) {
+            return true;
+        }
+        return (flags & CASE_INSENSITIVE) != 0 && foldCase(p) == foldCase(t);
+    }
+
+    /**
+     * Case folding as used by String.equalsIgnoreCase.
+     */
+    static char foldCase(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Perform KMP substring search directly on bytes, e.g. a UTF-8 encoded
+     * pattern against raw UTF-8 text, with no decoding to chars.
+     * 
+     * Returns the byte index of the first match, or -1 if there is none.
+     */
+    public static int search(byte[] text, byte[] pattern) {
+        return search(ByteBuffer.wrap(text), pattern);
+    }
+
+    /**
+     * Byte search over the remaining bytes of the buffer. The buffer's
+     * position is not changed; the returned index is relative to it, or -1
+     * if there is no match.
+     */
+    public static int search(ByteBuffer text, byte[] pattern) {
+        int m = pattern.length;
+        checkPattern(m);
+
+        int[] jumpTableM = buildJumpTable(pattern);
+        int base = text.position();
+        int n = text.remaining();
+
+        int k = 0; // Start of the current match in text
+        int i = 0; // Position of the current byte in pattern
+
+        while (k + i < n) {
+            if (pattern[i] == text.get(base + k + i)) { // Match at i
+                i = i + 1;
+                if (i == m) {
+                    return k; // Found pattern
+                }
+            } else if (jumpTableM[i] == -1) { // Mismatch, no self overlap
+                k = k + i + 1;
+                i = 0;
+            } else { // Mismatch, with self overlap
+                k = k + i - jumpTableM[i];
+                i = jumpTableM[i];
+            }
+        }
+
+        return -1; // Failed to find pattern
+    }
+
+    /**
+     * Byte version of searchAll, reporting the index (relative to the
+     * buffer's position) of every occurrence of the pattern.
+     */
+    public static void searchAll(ByteBuffer text, byte[] pattern, IntConsumer matches) {
+        int m = pattern.length;
+        checkPattern(m);
+
+        int[] jumpTableM = buildJumpTable(pattern);
+        int border = fullMatchJump(pattern, jumpTableM);
+        int base = text.position();
+        int n = text.remaining();
+
+        int k = 0;
+        int i = 0;
+
+        while (k + i < n) {
+            if (pattern[i] == text.get(base + k + i)) {
+                i = i + 1;
+                if (i == m) {
+                    matches.accept(k);
+                    k = k + m - border;
+                    i = border;
+                }
+            } else if (jumpTableM[i] == -1) {
+                k = k + i + 1;
+                i = 0;
+            } else {
+                k = k + i - jumpTableM[i];
+                i = jumpTableM[i];
+            }
+        }
+    }
+
+    /**
+     * Return the byte index of every occurrence of the pattern in the text.
+     */
+    public static int[] searchAll(byte[] text, byte[] pattern) {
+        Matches matches = new Matches();
+        searchAll(ByteBuffer.wrap(text), pattern, matches);
+        return matches.toArray();
+    }
+
+    /**
+     * Perform KMP substring search over the UTF-8 bytes of the given file.
+     * 
+     * The file is memory-mapped one chunk at a time and the partial match is
+     * carried across chunk boundaries, so memory use does not depend on the
+     * size of the file. Returns the byte offset of the first match, or -1 if
+     * there is none.
+     */
+    public static long searchFile(Path file, String pattern) throws IOException {
+        byte[] patternBytes = pattern.getBytes(StandardCharsets.UTF_8);
+        int m = patternBytes.length;
+        checkPattern(m);
+
+        int[] jumpTableM = buildJumpTable(patternBytes);
+        int i = 0; // Number of pattern bytes matched so far, kept between chunks
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            for (long base = 0; base < size; base += MAP_CHUNK_SIZE) {
+                int length = (int) Math.min(MAP_CHUNK_SIZE, size - base);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+
+                for (int pos = 0; pos < length; pos++) {
+                    byte b = chunk.get(pos);
+                    // Fall back through the jump table until b extends the match
+                    while (i >= 0 && patternBytes[i] != b) {
+                        i = jumpTableM[i];
+                    }
+                    i++;
+                    if (i == m) {
+                        return base + pos - m + 1; // Found pattern
+                    }
+                }
+            }
+        }
+
+        return -1; // Failed to find pattern
+    }
+
+    /**
+     * Perform KMP search over the UTF-8 bytes of the given file, passing the
+     * byte offset of every occurrence to the consumer. Like the single match
+     * version, the file is mapped a chunk at a time. Returns the number of
+     * matches found.
+     */
+    public static long searchFile(Path file, String pattern, LongConsumer matches) throws IOException {
+        byte[] patternBytes = pattern.getBytes(StandardCharsets.UTF_8);
+        int m = patternBytes.length;
+        checkPattern(m);
+
+        int[] jumpTableM = buildJumpTable(patternBytes);
+        int border = fullMatchJump(patternBytes, jumpTableM);
+        int i = 0; // Number of pattern bytes matched so far, kept between chunks
+        long count = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            for (long base = 0; base < size; base += MAP_CHUNK_SIZE) {
+                int length = (int) Math.min(MAP_CHUNK_SIZE, size - base);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+
+                for (int pos = 0; pos < length; pos++) {
+                    byte b = chunk.get(pos);
+                    while (i >= 0 && patternBytes[i] != b) {
+                        i = jumpTableM[i];
+                    }
+                    i++;
+                    if (i == m) {
+                        matches.accept(base + pos - m + 1);
+                        count++;
+                        i = border;
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Every search method rejects the empty pattern rather than each picking
+     * its own answer for where it matches.
+     */
+    static void checkPattern(int length) {
+        if (length == 0) {
+            throw new IllegalArgumentException("Cannot search for an empty pattern");
+        }
+    }
+
     public static int[] buildJumpTable(String pattern) {
         int m = pattern.length();
+        checkPattern(m);
         int[] jumpTableM = new int[m]; // Jump table
 
         jumpTableM[0] = -1; // Position in prefix
+        if (m == 1) {
+            return jumpTableM;
+        }
         jumpTableM[1] = 0; // Length of match
 
         int j = 0; // Position in table
@@ -83,4 +536,212 @@ public class KMP {
         }
         return jumpTableM;
     }
+
+    /**
+     * Version of buildJumpTable comparing pattern characters under the given
+     * flags. Only CASE_INSENSITIVE is supported here, since folded equality is
+     * still an equivalence; patterns with wildcards need
+     * buildWildcardJumpTable instead.
+     */
+    public static int[] buildJumpTable(String pattern, int flags) {
+        checkPattern(pattern.length());
+        if ((flags & WILDCARD) != 0) {
+            throw new IllegalArgumentException("Use buildWildcardJumpTable for wildcard patterns");
+        }
+
+        int m = pattern.length();
+        int[] jumpTableM = new int[m]; // Jump table
+
+        jumpTableM[0] = -1; // Position in prefix
+        if (m == 1) {
+            return jumpTableM;
+        }
+        jumpTableM[1] = 0; // Length of match
+
+        int j = 0; // Position in table
+        int pos = 2;
+
+        while (pos < m) {
+            if (charsMatch(pattern.charAt(pos - 1), pattern.charAt(j), flags)) {
+                j++;
+                jumpTableM[pos] = j;
+                pos++;
+            } else if (j > 0) {
+                j = jumpTableM[j];
+            } else {
+                jumpTableM[pos] = 0;
+                pos++;
+            }
+        }
+        return jumpTableM;
+    }
+
+    /**
+     * Jump tables for a pattern containing wildcards, indexed by the number of
+     * characters i matched before a mismatch (i = m after a full match).
+     * 
+     * A wildcard matches text characters we never looked at, so the single
+     * KMP jump table cannot describe both how far the match may move and how
+     * much of the pattern is known to match afterwards. Instead row 0 holds the
+     * shift: the smallest move for which the overlapping pattern characters
+     * do not definitely conflict, so no match is skipped. Row 1 holds the
+     * number of pattern characters known to match after that shift.
+     */
+    public static int[][] buildWildcardJumpTable(String pattern, int flags) {
+        int m = pattern.length();
+        checkPattern(m);
+
+        // For each shift s, the first overlap position where pattern[y] and
+        // pattern[y + s] definitely differ, and the first where a match of
+        // pattern[y + s] does not imply a match of pattern[y]
+        int[] conflict = new int[m + 1];
+        int[] implied = new int[m + 1];
+        for (int s = 1; s <= m; s++) {
+            conflict[s] = m - s;
+            implied[s] = m - s;
+            for (int y = 0; y < m - s; y++) {
+                char earlier = pattern.charAt(y);
+                char later = pattern.charAt(y + s);
+                boolean earlierAny = earlier == WILDCARD_CHAR;
+                boolean laterAny = later == WILDCARD_CHAR;
+
+                if (implied[s] == m - s && !earlierAny
+                        && (laterAny || !charsMatch(earlier, later, flags & CASE_INSENSITIVE))) {
+                    implied[s] = y;
+                }
+                if (!earlierAny && !laterAny && !charsMatch(earlier, later, flags & CASE_INSENSITIVE)) {
+                    conflict[s] = y;
+                    break;
+                }
+            }
+        }
+
+        int[] shift = new int[m + 1];
+        int[] resume = new int[m + 1];
+        shift[0] = 1; // Nothing matched, move on one character
+        resume[0] = 0;
+
+        for (int i = 1; i <= m; i++) {
+            int s = 1;
+            while (conflict[s] < i - s) {
+                s++;
+            }
+            shift[i] = s;
+            resume[i] = Math.min(implied[s], i - s);
+        }
+        return new int[][] {shift, resume};
+    }
+
+    /**
+     * Convert an ordinary jump table into the shift and resume form used by
+     * buildWildcardJumpTable, including the entry for a full match.
+     */
+    private static int[][] toShiftTables(String pattern, int[] jumpTableM, int flags) {
+        int m = pattern.length();
+        int[] shift = new int[m + 1];
+        int[] resume = new int[m + 1];
+
+        for (int i = 0; i < m; i++) {
+            resume[i] = Math.max(jumpTableM[i], 0);
+            shift[i] = i - jumpTableM[i]; // Moves on one character when nothing matched
+        }
+
+        // Border of the whole pattern, as in fullMatchJump
+        int j = jumpTableM[m - 1];
+        while (j >= 0 && !charsMatch(pattern.charAt(j), pattern.charAt(m - 1), flags)) {
+            j = jumpTableM[j];
+        }
+        resume[m] = j + 1;
+        shift[m] = m - resume[m];
+        return new int[][] {shift, resume};
+    }
+
+    /**
+     * Byte version of buildJumpTable, used when matching raw file contents.
+     */
+    public static int[] buildJumpTable(byte[] pattern) {
+        int m = pattern.length;
+        checkPattern(m);
+        int[] jumpTableM = new int[m]; // Jump table
+
+        jumpTableM[0] = -1; // Position in prefix
+        if (m == 1) {
+            return jumpTableM;
+        }
+        jumpTableM[1] = 0; // Length of match
+
+        int j = 0; // Position in table
+        int pos = 2;
+
+        while (pos < m) {
+            if (pattern[pos - 1] == pattern[j]) {
+                j++;
+                jumpTableM[pos] = j;
+                pos++;
+            } else if (j > 0) {
+                j = jumpTableM[j];
+            } else {
+                jumpTableM[pos] = 0;
+                pos++;
+            }
+        }
+        return jumpTableM;
+    }
+
+    /**
+     * Byte version of fullMatchJump.
+     */
+    static int fullMatchJump(byte[] pattern, int[] jumpTableM) {
+        int last = pattern.length - 1;
+        int j = jumpTableM[last];
+        while (j >= 0 && pattern[j] != pattern[last]) {
+            j = jumpTableM[j];
+        }
+        return j + 1;
+    }
+
+    /**
+     * Growable buffer of match positions, stored as a primitive int array so
+     * that no boxing happens while collecting results. Can be cleared and
+     * reused across searches.
+     */
+    public static class Matches implements IntConsumer {
+        private int[] positions;
+        private int size;
+
+        public Matches() {
+            this(16);
+        }
+
+        public Matches(int initialCapacity) {
+            positions = new int[Math.max(1, initialCapacity)];
+        }
+
+        @Override
+        public void accept(int position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        public int get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+            }
+            return positions[index];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        public int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
 }
@@ -0,0 +1,115 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * A pattern compiled for KMP search, in the spirit of java.util.regex.Pattern.
+ * The jump table is built once when the pattern is compiled and then reused
+ * for every search, so the same pattern can be searched for across many texts
+ * without rebuilding it. Instances are immutable and can be shared between
+ * threads.
+ */
+public final class KMPPattern {
+
+    private final String pattern;
+    private final int[] jumpTableM;
+    private final int border; // Jump taken after a full match
+
+    private KMPPattern(String pattern) {
+        this.pattern = pattern;
+        this.jumpTableM = KMP.buildJumpTable(pattern);
+        this.border = KMP.fullMatchJump(pattern, jumpTableM);
+    }
+
+    public static KMPPattern compile(String pattern) {
+        if (pattern.isEmpty()) {
+            throw new IllegalArgumentException("Cannot compile an empty pattern");
+        }
+        return new KMPPattern(pattern);
+    }
+
+    public String pattern() {
+        return pattern;
+    }
+
+    /**
+     * Return the starting index of the first match in the text, or -1 if
+     * there is none.
+     */
+    public int search(String text) {
+        return KMP.search(text, pattern, jumpTableM);
+    }
+
+    /**
+     * Pass the starting index of every match in the text to the consumer.
+     */
+    public void searchAll(String text, IntConsumer matches) {
+        KMP.searchRange(text, pattern, jumpTableM, border, 0, text.length(), matches);
+    }
+
+    public int[] searchAll(String text) {
+        KMP.Matches matches = new KMP.Matches();
+        searchAll(text, matches);
+        return matches.toArray();
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    /**
+     * Bounded least-recently-used cache of compiled patterns keyed by the
+     * pattern string. Counts hits and misses so the cache size can be tuned.
+     * Safe to use from several threads.
+     */
+    public static class Cache {
+        private final Map<String, KMPPattern> patterns;
+        private long hits;
+        private long misses;
+
+        public Cache(int maxSize) {
+            if (maxSize < 1) {
+                throw new IllegalArgumentException("Cache size must be at least 1");
+            }
+            // Access ordered, so the eldest entry is the least recently used
+            this.patterns = new LinkedHashMap<String, KMPPattern>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, KMPPattern> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        /**
+         * Return the compiled pattern, compiling and caching it if needed.
+         */
+        public synchronized KMPPattern get(String pattern) {
+            KMPPattern compiled = patterns.get(pattern);
+            if (compiled != null) {
+                hits++;
+                return compiled;
+            }
+
+            misses++;
+            compiled = compile(pattern);
+            patterns.put(pattern, compiled);
+            return compiled;
+        }
+
+        public synchronized int size() {
+            return patterns.size();
+        }
+
+        public synchronized long getHits() {
+            return hits;
+        }
+
+        public synchronized long getMisses() {
+            return misses;
+        }
+
+        public synchronized void clear() {
+            patterns.clear();
+        }
+    }
+}
@@ -1,12 +1,27 @@
 import java.util.*;
 import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.function.Consumer;
 
 public class LempelZivCompress {
 
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Please call this program with one argument which is the input file name.");
+        if (args.length != 1 && args.length != 2) {
+            System.out.println("Please call this program with one argument which is the input file name,");
+            System.out.println("optionally followed by a compression level: fast, lazy, optimal or max.");
         } else {
+            Level level = Level.FAST;
+            if (args.length == 2) {
+                try {
+                    level = Level.valueOf(args[1].toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Unknown compression level " + args[1] + ", please use fast, lazy, optimal or max.");
+                    return;
+                }
+            }
+
             try {
                 Scanner s = new Scanner(new File(args[0]));
 
@@ -16,41 +31,429 @@ public class LempelZivCompress {
                     fileText.append(s.nextLine() + "\n");
                 }
 
-                System.out.println(compress(fileText.toString()));
+                System.out.println(compress(fileText.toString(), level));
             } catch (FileNotFoundException e) {
                 System.out.println("Unable to find file called " + args[0]);
             }
         }
     }
     
+    static final int MIN_MATCH = 3;
+    static final int MAX_MATCH = 258;
+    static final int DEFAULT_WINDOW_SIZE = 1 << 15;
+    static final int DEFAULT_MAX_CHAIN = 32;
+    static final int FAST_MAX_CHAIN = 8;
+    static final int FAST_NICE_LENGTH = 32; // FAST stops searching at a match this long
+    static final int FAST_MAX_INSERT = 8; // FAST only indexes the positions inside matches up to this long
+    static final int MAX_LAZY = 32; // Matches this long are taken without looking ahead
+    static final int NICE_LENGTH = 64; // Matches this long end the optimal parse search at a position
+    static final int OPTIMAL_BLOCK = 1 << 16;
+
+    /**
+     * How hard to look for matches, from fastest to best ratio. FAST takes the
+     * first good enough match at each position from short hash chains over
+     * 32 KB, and skips indexing the inside of long matches. LAZY first
+     * checks whether the next position has a longer match, and OPTIMAL picks
+     * the cheapest sequence of tokens over the whole block, both over a 64 KB
+     * window. MAX parses like OPTIMAL with binary trees over a 1 MB window.
+     */
+    public enum Level {
+        FAST(DEFAULT_WINDOW_SIZE, FAST_MAX_CHAIN),
+        LAZY(1 << 16, 64),
+        OPTIMAL(1 << 16, 64),
+        MAX(1 << 20, 64);
+
+        final int windowSize;
+        final int depth; // Hash chain length or tree depth searched
+
+        Level(int windowSize, int depth) {
+            this.windowSize = windowSize;
+            this.depth = depth;
+        }
+
+        MatchFinder finder(byte[] data, int end) {
+            if (this == MAX) {
+                return new BinaryTreeMatchFinder(data, end, windowSize, depth, MAX_MATCH);
+            }
+            if (this == FAST) {
+                return new HashChainMatchFinder(data, end, windowSize, depth, FAST_NICE_LENGTH, MAX_MATCH);
+            }
+            return new HashChainMatchFinder(data, end, windowSize, depth, MAX_MATCH);
+        }
+
+        void parse(byte[] data, int end, Tokens out) {
+            MatchFinder finder = finder(data, end);
+            switch (this) {
+            case FAST:
+                LempelZivCompress.parse(data, end, finder, FAST_MAX_INSERT, out);
+                break;
+            case LAZY:
+                parseLazy(data, end, finder, out);
+                break;
+            default:
+                parseOptimal(data, end, finder, out);
+            }
+        }
+    }
+
+    /**
+     * Receives the output of a parse: runs of literal bytes, and matches
+     * copying length bytes from distance bytes back.
+     */
+    public interface Tokens {
+        void literals(byte[] data, int from, int to);
+
+        void match(int distance, int length);
+    }
+
     /**
      * Take uncompressed input as a text string, compress it, and return it as a
      * text string.
      */
     public static String compress(String input) {
-        // TODO (currently just returns the argument).
+        return compress(input, Level.FAST);
+    }
+
+    /**
+     * Compress the UTF-8 bytes of the input at the given level into the text
+     * token format.
+     */
+    public static String compress(String input, Level level) {
+        byte[] data = input.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        return toText(out -> level.parse(data, data.length, out));
+    }
+
+    /**
+     * Compress the UTF-8 bytes of the input with the given window size (a
+     * power of two) and hash chain depth. Literals are written as [0|0|c],
+     * with bytes outside printable ASCII and \ escaped as \xx in hex, and
+     * matches as [distance|length].
+     */
+    public static String compress(String input, int windowSize, int maxChain) {
+        byte[] data = input.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        return toText(out -> parse(data, data.length,
+                new HashChainMatchFinder(data, data.length, windowSize, maxChain, MAX_MATCH), out));
+    }
+
+    private static String toText(Consumer<Tokens> parser) {
+        StringBuilder out = new StringBuilder();
+
+        parser.accept(new Tokens() {
+            public void literals(byte[] data, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    int b = data[i] & 0xFF;
+                    out.append("[0|0|");
+                    if (b >= ' ' && b <= '~' && b != '\\') {
+                        out.append((char) b);
+                    } else {
+                        out.append('\\').append(Character.forDigit(b >> 4, 16))
+                                .append(Character.forDigit(b & 0xF, 16));
+                    }
+                    out.append(']');
+                }
+            }
+
+            public void match(int distance, int length) {
+                out.append('[').append(distance).append('|').append(length).append(']');
+            }
+        });
+        return out.toString();
+    }
+
+    /**
+     * Compress data into the binary token format read by
+     * LempelZivDecompress.decompress(byte[]), using the default window size
+     * and hash chain depth.
+     */
+    public static byte[] compress(byte[] data) {
+        return compress(data, Level.FAST);
+    }
+
+    /**
+     * Compress data at the given level into the binary token format.
+     */
+    public static byte[] compress(byte[] data, Level level) {
+        return toBinary(data.length, out -> level.parse(data, data.length, out));
+    }
+
+    /**
+     * Compress data into the binary token format. The stream starts with the
+     * uncompressed length, then holds sequences of a literal count, that many
+     * literal bytes, the match distance and the match length minus MIN_MATCH.
+     * The match is left out of the last sequence once the literals reach the
+     * end of the data. All numbers are unsigned LEB128 varints.
+     */
+    public static byte[] compress(byte[] data, int windowSize, int maxChain) {
+        return toBinary(data.length, out -> parse(data, data.length,
+                new HashChainMatchFinder(data, data.length, windowSize, maxChain, MAX_MATCH), out));
+    }
+
+    private static byte[] toBinary(int length, Consumer<Tokens> parser) {
+        BinaryTokens out = new BinaryTokens(length);
+        parser.accept(out);
+        return out.finish();
+    }
+
+    /**
+     * Writes tokens in the binary format, holding back each literal run until
+     * the match after it, or the end, arrives.
+     */
+    static class BinaryTokens implements Tokens {
+        private byte[] buf;
+        private int size;
+        private byte[] literalData;
+        private int literalFrom;
+        private int literalTo;
+
+        BinaryTokens(int length) {
+            buf = new byte[Math.max(16, length / 2)];
+            ensure(5);
+            writeVarint(length);
+        }
+
+        public void literals(byte[] data, int from, int to) {
+            literalData = data;
+            literalFrom = from;
+            literalTo = to;
+        }
+
+        public void match(int distance, int length) {
+            ensure(literalTo - literalFrom + 15); // Room for the literals and three varints
+            writeLiterals();
+            writeVarint(distance);
+            writeVarint(length - MIN_MATCH);
+        }
+
+        byte[] finish() {
+            if (literalTo > literalFrom) {
+                ensure(literalTo - literalFrom + 5);
+                writeLiterals();
+            }
+            return Arrays.copyOf(buf, size);
+        }
+
+        private void writeLiterals() {
+            int count = literalTo - literalFrom;
+            writeVarint(count);
+            if (count > 0) {
+                System.arraycopy(literalData, literalFrom, buf, size, count);
+                size += count;
+            }
+            literalFrom = literalTo = 0;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                buf[size++] = (byte) (value | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Greedy parse of data[0..end): take the longest match at each position
+     * if there is one, otherwise a literal.
+     */
+    public static void parse(byte[] data, int end, MatchFinder finder, Tokens out) {
+        parse(data, end, finder, Integer.MAX_VALUE, out);
+    }
+
+    /**
+     * Greedy parse that adds the positions inside a match to the finder only
+     * for matches of at most maxInsert, as zlib does at its fast levels. Long
+     * matches are mostly in repetitive data, where the skipped positions would
+     * add little but cost a finder update each.
+     */
+    static void parse(byte[] data, int end, MatchFinder finder, int maxInsert, Tokens out) {
+        int pos = 0;
+        int literalStart = 0;
+
+        while (pos < end) {
+            long match = finder.findAndInsert(pos);
+            int length = MatchFinder.length(match);
+
+            if (length >= MIN_MATCH) {
+                if (literalStart < pos) {
+                    out.literals(data, literalStart, pos);
+                }
+                out.match(MatchFinder.distance(match), length);
+                if (length <= maxInsert) {
+                    for (int i = pos + 1; i < pos + length; i++) {
+                        finder.insert(i);
+                    }
+                }
+                pos += length;
+                literalStart = pos;
+            } else {
+                pos++;
+            }
+        }
+
+        if (literalStart < end) {
+            out.literals(data, literalStart, end);
+        }
+    }
+
+    /**
+     * Lazy parse, as in zlib: before taking a match, look for one at the next
+     * position, and if that is longer emit a literal and consider it instead.
+     */
+    public static void parseLazy(byte[] data, int end, MatchFinder finder, Tokens out) {
+        int pos = 0;
+        int literalStart = 0;
+        long match = end > 0 ? finder.findAndInsert(0) : 0;
+
+        while (pos < end) {
+            int length = MatchFinder.length(match);
+            if (length < MIN_MATCH) {
+                pos++;
+                match = pos < end ? finder.findAndInsert(pos) : 0;
+                continue;
+            }
 
-        int cursor = 0;
-        int windowSize = 100; // Some suitable size
-        int match;
+            boolean lookedAhead = length < MAX_LAZY && pos + 1 < end;
+            if (lookedAhead) {
+                long next = finder.findAndInsert(pos + 1);
+                if (MatchFinder.length(next) > length) {
+                    pos++;
+                    match = next;
+                    continue;
+                }
+            }
+
+            if (literalStart < pos) {
+                out.literals(data, literalStart, pos);
+            }
+            out.match(MatchFinder.distance(match), length);
+            for (int i = pos + (lookedAhead ? 2 : 1); i < pos + length; i++) {
+                finder.insert(i);
+            }
+            pos += length;
+            literalStart = pos;
+            match = pos < end ? finder.findAndInsert(pos) : 0;
+        }
+
+        if (literalStart < end) {
+            out.literals(data, literalStart, end);
+        }
+    }
+
+    /**
+     * Optimal parse: in blocks of OPTIMAL_BLOCK bytes, find the sequence of
+     * literals and matches that costs the fewest bytes, by a shortest path over
+     * the positions in the block. The match at each position may be used at
+     * any length from MIN_MATCH up. Prices are the sizes of the tokens in the
+     * binary format: a byte per literal, and for a match its distance and
+     * length varints plus the literal count in front of it. A match of at
+     * least NICE_LENGTH is taken outright, skipping the positions it covers,
+     * which keeps long repeats from costing a price update per length.
+     */
+    public static void parseOptimal(byte[] data, int end, MatchFinder finder, Tokens out) {
+        int blockSize = Math.min(OPTIMAL_BLOCK, end);
+        int[] price = new int[blockSize + 1];
+        int[] lengthTo = new int[blockSize + 1]; // Token ending at each position: 1 for a literal
+        int[] distanceTo = new int[blockSize + 1];
+        int[] path = new int[blockSize];
 
-        while (cursor < input.length()) {
-            int length = 1;
-            int prevMatch = 0;
+        int literalStart = 0;
+        for (int start = 0; start < end; start += blockSize) {
+            int n = Math.min(blockSize, end - start);
+            Arrays.fill(price, 1, n + 1, Integer.MAX_VALUE);
+
+            for (int i = 0; i < n; i++) {
+                int here = price[i];
+                if (here + 1 < price[i + 1]) {
+                    price[i + 1] = here + 1;
+                    lengthTo[i + 1] = 1;
+                }
+
+                long match = finder.findAndInsert(start + i);
+                int length = Math.min(MatchFinder.length(match), n - i);
+                if (length < MIN_MATCH) {
+                    continue;
+                }
+                int distance = MatchFinder.distance(match);
+                int matchPrice = here + 1 + varintSize(distance);
 
-            while (true) {
-                match = cursor < windowSize ? 0 : cursor - windowSize;
+                if (length >= NICE_LENGTH) {
+                    int total = matchPrice + varintSize(length - MIN_MATCH);
+                    if (total < price[i + length]) {
+                        price[i + length] = total;
+                        lengthTo[i + length] = length;
+                        distanceTo[i + length] = distance;
+                    }
+                    for (int j = i + 1; j < i + length; j++) {
+                        finder.insert(start + j);
+                    }
+                    i += length - 1;
+                    continue;
+                }
 
-                int start = 0;
+                for (int l = MIN_MATCH; l <= length; l++) {
+                    int total = matchPrice + varintSize(l - MIN_MATCH);
+                    if (total < price[i + l]) {
+                        price[i + l] = total;
+                        lengthTo[i + l] = l;
+                        distanceTo[i + l] = distance;
+                    }
+                }
+            }
 
-                if (match >= 0) { // Match succeeded
-                    prevMatch = match;
-                    length++;
-                } else {
-                    break;
+            // Walk back from the end of the block, then emit the tokens forwards
+            int tokens = 0;
+            for (int j = n; j > 0; j -= lengthTo[j]) {
+                path[tokens++] = j;
+            }
+            int pos = start;
+            while (tokens > 0) {
+                int j = path[--tokens];
+                int length = lengthTo[j];
+                if (length > 1) {
+                    if (literalStart < pos) {
+                        out.literals(data, literalStart, pos);
+                    }
+                    out.match(distanceTo[j], length);
+                    literalStart = pos + length;
                 }
+                pos += length;
+            }
+        }
+
+        if (literalStart < end) {
+            out.literals(data, literalStart, end);
+        }
+    }
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Length of the match between data at a and at b, given that the first
+     * length bytes already match, up to limit. Compares eight bytes at a time;
+     * b + limit must be within data, and a must be before b.
+     */
+    static int matchLength(byte[] data, int a, int b, int length, int limit) {
+        while (length + 8 <= limit) {
+            long diff = (long) LONGS.get(data, a + length) ^ (long) LONGS.get(data, b + length);
+            if (diff != 0) {
+                return length + (Long.numberOfTrailingZeros(diff) >>> 3);
             }
+            length += 8;
+        }
+        while (length < limit && data[a + length] == data[b + length]) {
+            length++;
         }
-        return input;
+        return length;
+    }
+
+    static int varintSize(int value) {
+        return value < 1 << 7 ? 1 : value < 1 << 14 ? 2 : value < 1 << 21 ? 3 : value < 1 << 28 ? 4 : 5;
     }
 }
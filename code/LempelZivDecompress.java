@@ -1,5 +1,6 @@
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 public class LempelZivDecompress {
 
@@ -25,10 +26,238 @@ public class LempelZivDecompress {
     
     /**
      * Take compressed input as a text string, decompress it, and return it as a
-     * text string.
+     * text string. Anything between tokens, such as line breaks, is ignored.
      */
     public static String decompress(String compressed) {
-        // TODO (currently just returns the argument).
-        return compressed;
+        byte[] out = new byte[Math.max(16, compressed.length())];
+        int size = 0;
+        int i = compressed.indexOf('[');
+
+        while (i >= 0) {
+            int bar = compressed.indexOf('|', i);
+            int close = compressed.indexOf(']', bar);
+            int distance = Integer.parseInt(compressed.substring(i + 1, bar));
+
+            if (distance == 0) {
+                // Literal: [0|0|c] or [0|0|\xx]
+                int c = bar + 3;
+                int b = compressed.charAt(c);
+                if (b == '\\') {
+                    b = Integer.parseInt(compressed.substring(c + 1, c + 3), 16);
+                    c += 2;
+                }
+                close = c + 1;
+                if (size == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                out[size++] = (byte) b;
+            } else {
+                int length = Integer.parseInt(compressed.substring(bar + 1, close));
+                if (size + length > out.length) {
+                    out = Arrays.copyOf(out, Math.max(out.length * 2, size + length));
+                }
+                // Byte at a time, as the match may overlap the bytes it is producing
+                for (int k = 0; k < length; k++, size++) {
+                    out[size] = out[size - distance];
+                }
+            }
+
+            i = compressed.indexOf('[', close + 1);
+        }
+
+        return new String(out, 0, size, java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decompress the binary token format written by
+     * LempelZivCompress.compress(byte[]).
+     */
+    public static byte[] decompress(byte[] compressed) {
+        byte[] out = new byte[decompressedLength(compressed)];
+        decompress(compressed, out, 0);
+        return out;
+    }
+
+    /**
+     * The uncompressed length recorded at the start of a binary stream, so the
+     * output can be allocated up front.
+     */
+    public static int decompressedLength(byte[] compressed) {
+        return decompressedLength(ByteBuffer.wrap(compressed));
+    }
+
+    /**
+     * The uncompressed length recorded at the start of the binary stream at the
+     * buffer's position, which is left unchanged. Throws
+     * IllegalArgumentException if the stream is too short or the length
+     * is invalid.
+     */
+    public static int decompressedLength(ByteBuffer compressed) {
+        int length = readVarint(compressed.duplicate());
+        if (length < 0) {
+            throw new IllegalArgumentException("Invalid length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Decompress a binary stream into out starting at offset, which must have
+     * room for decompressedLength bytes. Returns the number of bytes written.
+     */
+    public static int decompress(byte[] compressed, byte[] out, int offset) {
+        return decompress(compressed, new int[] {0}, compressed.length, out, offset, out.length);
+    }
+
+    /**
+     * Array decoder shared by both public forms. The stream is read from in[0]
+     * up to inEnd, and in[0] is left just past it; nothing is written to out
+     * outside offset up to outEnd.
+     */
+    private static int decompress(byte[] compressed, int[] in, int inEnd, byte[] out, int offset, int outEnd) {
+        int length = readVarint(compressed, in, inEnd);
+        if (length < 0 || length > outEnd - offset) {
+            throw new IllegalArgumentException("Output needs " + length + " bytes, has room for " + (outEnd - offset));
+        }
+
+        int end = offset + length;
+        int pos = offset;
+        while (pos < end) {
+            int count = readVarint(compressed, in, inEnd);
+            if (count < 0 || count > end - pos || count > inEnd - in[0]) {
+                throw new IllegalArgumentException("Corrupt literals at output offset " + (pos - offset));
+            }
+            System.arraycopy(compressed, in[0], out, pos, count);
+            in[0] += count;
+            pos += count;
+            if (pos == end) {
+                break;
+            }
+
+            int distance = readVarint(compressed, in, inEnd);
+            int matchLength = readVarint(compressed, in, inEnd) + LempelZivCompress.MIN_MATCH;
+            if (distance < 1 || distance > pos - offset || matchLength < LempelZivCompress.MIN_MATCH
+                    || matchLength > end - pos) {
+                throw new IllegalArgumentException("Corrupt match at output offset " + (pos - offset));
+            }
+            copyMatch(out, pos, distance, matchLength);
+            pos += matchLength;
+        }
+        return length;
+    }
+
+    /**
+     * Decompress the binary stream at in's position into out at its position,
+     * advancing both. Heap buffers are decoded in place through their arrays.
+     * Returns the number of bytes written, and throws IllegalArgumentException
+     * without writing anything if they will not fit before out's limit.
+     */
+    public static int decompress(ByteBuffer in, ByteBuffer out) {
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            int[] read = {in.arrayOffset() + in.position()};
+            int length = decompress(in.array(), read, in.arrayOffset() + in.limit(),
+                    out.array(), out.arrayOffset() + out.position(), out.arrayOffset() + out.limit());
+            in.position(read[0] - in.arrayOffset());
+            out.position(out.position() + length);
+            return length;
+        }
+
+        int length = readVarint(in);
+        if (length < 0 || length > out.remaining()) {
+            throw new IllegalArgumentException("Output needs " + length + " bytes, has room for " + out.remaining());
+        }
+
+        int start = out.position();
+        int end = start + length;
+        while (out.position() < end) {
+            int count = readVarint(in);
+            if (count < 0 || count > end - out.position() || count > in.remaining()) {
+                throw new IllegalArgumentException("Corrupt literals at output offset " + (out.position() - start));
+            }
+            ByteBuffer literals = in.duplicate();
+            literals.limit(literals.position() + count);
+            out.put(literals);
+            in.position(in.position() + count);
+            if (out.position() == end) {
+                break;
+            }
+
+            int pos = out.position();
+            int distance = readVarint(in);
+            int matchLength = readVarint(in) + LempelZivCompress.MIN_MATCH;
+            if (distance < 1 || distance > pos - start || matchLength < LempelZivCompress.MIN_MATCH
+                    || matchLength > end - pos) {
+                throw new IllegalArgumentException("Corrupt match at output offset " + (pos - start));
+            }
+            // Copy in chunks that never overlap their source, doubling as the repeated part grows
+            int src = pos - distance;
+            int remaining = matchLength;
+            while (remaining > 0) {
+                int chunk = Math.min(out.position() - src, remaining);
+                ByteBuffer from = out.duplicate();
+                from.limit(src + chunk).position(src);
+                out.put(from);
+                remaining -= chunk;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Copy length bytes from distance back in out to pos. A match longer than
+     * its distance repeats the bytes it has just written; rather than going a
+     * byte at a time it copies the period, then twice that, and so on, as
+     * every copied block is itself a valid source.
+     */
+    static void copyMatch(byte[] out, int pos, int distance, int length) {
+        int src = pos - distance;
+        if (distance >= length) {
+            System.arraycopy(out, src, out, pos, length);
+        } else if (distance == 1) {
+            Arrays.fill(out, pos, pos + length, out[src]);
+        } else {
+            int end = pos + length;
+            while (pos < end) {
+                int chunk = Math.min(pos - src, end - pos);
+                System.arraycopy(out, src, out, pos, chunk);
+                pos += chunk;
+            }
+        }
+    }
+
+    // Longest varint for an int: 5 groups of 7 bits
+    static final int MAX_VARINT_SHIFT = 28;
+
+    private static int readVarint(byte[] in, int[] pos, int end) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (pos[0] >= end) {
+                throw new IllegalArgumentException("Truncated stream");
+            }
+            if (shift > MAX_VARINT_SHIFT) {
+                throw new IllegalArgumentException("Varint longer than 5 bytes");
+            }
+            byte b = in[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (!in.hasRemaining()) {
+                throw new IllegalArgumentException("Truncated stream");
+            }
+            if (shift > MAX_VARINT_SHIFT) {
+                throw new IllegalArgumentException("Varint longer than 5 bytes");
+            }
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
     }
 }
@@ -0,0 +1,32 @@
+/**
+ * Finds earlier occurrences of the data at a position, for LZ77 compression.
+ * Positions must be visited in increasing order, each either through
+ * findAndInsert or, when it lies inside a match already taken, insert.
+ */
+public interface MatchFinder {
+
+    /**
+     * Find the longest match for the data starting at pos within the window,
+     * and add pos to the finder. Returns the distance back to the match in the
+     * high 32 bits and its length in the low 32 bits, or 0 if there is no
+     * match of at least the minimum length.
+     */
+    long findAndInsert(int pos);
+
+    /**
+     * Add pos to the finder without searching.
+     */
+    void insert(int pos);
+
+    static int distance(long match) {
+        return (int) (match >>> 32);
+    }
+
+    static int length(long match) {
+        return (int) match;
+    }
+
+    static long match(int distance, int length) {
+        return ((long) distance << 32) | length;
+    }
+}
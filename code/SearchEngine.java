@@ -0,0 +1,41 @@
+import java.util.function.IntConsumer;
+
+/**
+ * Common interface for the substring search algorithms, so that callers can
+ * pick one (or let choose pick one) without depending on a specific class.
+ */
+public interface SearchEngine {
+
+    // Patterns shorter than this are always searched with KMP
+    int SKIP_MIN_PATTERN_LENGTH = 8;
+
+    // Minimum number of distinct characters in a pattern for skip search
+    int SKIP_MIN_DISTINCT_CHARS = 4;
+
+    /**
+     * Return the starting index of the first match of the pattern in the
+     * text, or -1 if there is none.
+     */
+    int search(String text, String pattern);
+
+    /**
+     * Pass the starting index of every match of the pattern in the text to the
+     * consumer, in increasing order.
+     */
+    void searchAll(String text, String pattern, IntConsumer matches);
+
+    /**
+     * Pick an engine for the given pattern. Horspool's skip search only pays
+     * off for long patterns over a varied alphabet, where a mismatch usually
+     * allows a long skip; everything else (short or highly repetitive
+     * patterns) goes to KMP, which is guaranteed linear.
+     */
+    static SearchEngine choose(String pattern) {
+        if (pattern.length() < SKIP_MIN_PATTERN_LENGTH) {
+            return KMP.ENGINE;
+        }
+
+        int distinct = (int) pattern.chars().distinct().limit(SKIP_MIN_DISTINCT_CHARS).count();
+        return distinct >= SKIP_MIN_DISTINCT_CHARS ? Horspool.ENGINE : KMP.ENGINE;
+    }
+}
@@ -0,0 +1,417 @@
+import java.util.*;
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Suffix array index over a fixed text, for answering many substring queries
+ * against the same text. The index is built once in O(n log n), after which
+ * first and count take O(m log n), and searchAll that plus the number of
+ * matches reported, instead of the full O(n) scan KMP needs.
+ * 
+ * The suffix array and LCP array are held as IntBuffers, either on the heap or
+ * memory-mapped from a file written by save.
+ */
+public class SuffixArray {
+
+    private static final int FILE_MAGIC = 0x53554658; // "SUFX"
+    private static final int MIN_BLOCK = 64; // Sorted positions per block of the range-minimum table
+
+    private final String text;
+    private final IntBuffer suffixes; // Start of each suffix, in sorted order
+    private final IntBuffer lcp; // Common prefix length of each suffix and the one before it
+    private volatile int[][] blockMinimums; // Built by first when first needed
+
+    private SuffixArray(String text, IntBuffer suffixes, IntBuffer lcp) {
+        this.text = text;
+        this.suffixes = suffixes;
+        this.lcp = lcp;
+    }
+
+    /**
+     * Build the index for the given text, by prefix doubling with radix sort.
+     */
+    public static SuffixArray build(String text) {
+        int n = text.length();
+        int[] sa = new int[n];
+        int[] rank = new int[n];
+        int[] tmp = new int[n];
+        int[] count = new int[Math.max(Character.MAX_VALUE + 1, n)];
+
+        // Sort by first character
+        for (int i = 0; i < n; i++) {
+            rank[i] = text.charAt(i);
+            count[rank[i]]++;
+        }
+        for (int c = 1; c < count.length; c++) {
+            count[c] += count[c - 1];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            sa[--count[rank[i]]] = i;
+        }
+
+        // Double the sorted prefix length until all suffixes are distinct
+        for (int k = 1; k < n; k <<= 1) {
+            // Order by second key: suffixes without one first, then by rank
+            int p = 0;
+            for (int i = n - k; i < n; i++) {
+                tmp[p++] = i;
+            }
+            for (int j = 0; j < n; j++) {
+                if (sa[j] >= k) {
+                    tmp[p++] = sa[j] - k;
+                }
+            }
+
+            // Stable counting sort by first key
+            Arrays.fill(count, 0);
+            for (int i = 0; i < n; i++) {
+                count[rank[i]]++;
+            }
+            for (int c = 1; c < count.length; c++) {
+                count[c] += count[c - 1];
+            }
+            for (int j = n - 1; j >= 0; j--) {
+                sa[--count[rank[tmp[j]]]] = tmp[j];
+            }
+
+            // New ranks from the (first, second) key pairs
+            tmp[sa[0]] = 0;
+            int classes = 1;
+            for (int j = 1; j < n; j++) {
+                int prev = sa[j - 1];
+                int curr = sa[j];
+                if (rank[prev] != rank[curr] || secondKey(rank, prev, k) != secondKey(rank, curr, k)) {
+                    classes++;
+                }
+                tmp[curr] = classes - 1;
+            }
+            int[] swap = rank;
+            rank = tmp;
+            tmp = swap;
+
+            if (classes == n) {
+                break;
+            }
+        }
+
+        return new SuffixArray(text, IntBuffer.wrap(sa), IntBuffer.wrap(buildLcp(text, sa)));
+    }
+
+    private static int secondKey(int[] rank, int i, int k) {
+        return i + k < rank.length ? rank[i + k] : -1;
+    }
+
+    /**
+     * Kasai's algorithm: lcp[j] is the length of the common prefix of the
+     * suffixes at sorted positions j - 1 and j (lcp[0] = 0).
+     */
+    private static int[] buildLcp(String text, int[] sa) {
+        int n = sa.length;
+        int[] inverse = new int[n];
+        for (int j = 0; j < n; j++) {
+            inverse[sa[j]] = j;
+        }
+
+        int[] lcp = new int[n];
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            if (inverse[i] == 0) {
+                h = 0;
+                continue;
+            }
+            int prev = sa[inverse[i] - 1];
+            while (i + h < n && prev + h < n && text.charAt(i + h) == text.charAt(prev + h)) {
+                h++;
+            }
+            lcp[inverse[i]] = h;
+            if (h > 0) {
+                h--;
+            }
+        }
+        return lcp;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int length() {
+        return suffixes.limit();
+    }
+
+    /**
+     * Start of the j-th smallest suffix.
+     */
+    public int suffix(int j) {
+        return suffixes.get(j);
+    }
+
+    /**
+     * Length of the common prefix of the j-th and (j - 1)-th smallest suffixes.
+     */
+    public int lcp(int j) {
+        return lcp.get(j);
+    }
+
+    /**
+     * Return the index of the first (leftmost) occurrence of the pattern, or
+     * -1 if there is none. The matches are a range of sorted positions, and
+     * its smallest start is found with a range-minimum table, so this takes
+     * O(m log n) however many matches there are.
+     */
+    public int first(String pattern) {
+        KMP.checkPattern(pattern.length());
+        int from = lowerBound(pattern);
+        int to = upperBound(pattern, from);
+        return from < to ? minimumStart(from, to) : -1;
+    }
+
+    /**
+     * Smallest suffix start at sorted positions [from, to). The partial blocks
+     * at either end are scanned, at most 2 * MIN_BLOCK positions, and the
+     * whole blocks between are covered by two overlapping entries of the
+     * sparse table.
+     */
+    private int minimumStart(int from, int to) {
+        int firstBlock = (from + MIN_BLOCK - 1) / MIN_BLOCK;
+        int lastBlock = to / MIN_BLOCK; // Exclusive
+        if (firstBlock >= lastBlock) {
+            return scanMinimum(from, to);
+        }
+
+        int[][] table = blockMinimums();
+        int level = 31 - Integer.numberOfLeadingZeros(lastBlock - firstBlock);
+        int minimum = Math.min(table[level][firstBlock], table[level][lastBlock - (1 << level)]);
+        minimum = Math.min(minimum, scanMinimum(from, firstBlock * MIN_BLOCK));
+        return Math.min(minimum, scanMinimum(lastBlock * MIN_BLOCK, to));
+    }
+
+    private int scanMinimum(int from, int to) {
+        int minimum = Integer.MAX_VALUE;
+        for (int j = from; j < to; j++) {
+            minimum = Math.min(minimum, suffixes.get(j));
+        }
+        return minimum;
+    }
+
+    /**
+     * Sparse table over blocks of MIN_BLOCK sorted positions: entry [k][b] is
+     * the smallest suffix start in blocks b to b + 2^k - 1. At about n / 64
+     * ints per level it is small next to the suffix array. It is built on
+     * first use, so load stays cheap for indexes that never call first.
+     */
+    private int[][] blockMinimums() {
+        int[][] table = blockMinimums;
+        if (table == null) {
+            int blocks = length() / MIN_BLOCK;
+            table = new int[32 - Integer.numberOfLeadingZeros(blocks)][];
+            table[0] = new int[blocks];
+            for (int b = 0; b < blocks; b++) {
+                table[0][b] = scanMinimum(b * MIN_BLOCK, (b + 1) * MIN_BLOCK);
+            }
+            for (int k = 1; k < table.length; k++) {
+                int half = 1 << (k - 1);
+                table[k] = new int[blocks - (1 << k) + 1];
+                for (int b = 0; b < table[k].length; b++) {
+                    table[k][b] = Math.min(table[k - 1][b], table[k - 1][b + half]);
+                }
+            }
+            blockMinimums = table; // Racing threads build equal tables, so either may win
+        }
+        return table;
+    }
+
+    public int count(String pattern) {
+        KMP.checkPattern(pattern.length());
+        int from = lowerBound(pattern);
+        return upperBound(pattern, from) - from;
+    }
+
+    /**
+     * Pass the start of every occurrence of the pattern to the consumer, in
+     * suffix order (not text order).
+     */
+    public void searchAll(String pattern, IntConsumer matches) {
+        KMP.checkPattern(pattern.length());
+        int from = lowerBound(pattern);
+        int to = upperBound(pattern, from);
+        for (int j = from; j < to; j++) {
+            matches.accept(suffixes.get(j));
+        }
+    }
+
+    /**
+     * Return the start of every occurrence of the pattern, in increasing order.
+     */
+    public int[] searchAll(String pattern) {
+        KMP.Matches matches = new KMP.Matches();
+        searchAll(pattern, matches);
+        int[] positions = matches.toArray();
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    /**
+     * First sorted position whose suffix is not less than the pattern.
+     */
+    private int lowerBound(String pattern) {
+        int lo = 0;
+        int hi = length();
+        int lcpLo = 0; // Characters known to match at lo and hi
+        int lcpHi = 0;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int skip = Math.min(lcpLo, lcpHi);
+            int matched = matchLength(pattern, suffixes.get(mid), skip);
+            if (compareAt(pattern, suffixes.get(mid), matched) > 0) {
+                lo = mid + 1;
+                lcpLo = matched;
+            } else {
+                hi = mid;
+                lcpHi = matched;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * First sorted position from the given one whose suffix does not start
+     * with the pattern.
+     */
+    private int upperBound(String pattern, int from) {
+        int lo = from;
+        int hi = length();
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (matchLength(pattern, suffixes.get(mid), 0) == pattern.length()) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Number of leading characters of the pattern matching the suffix at
+     * start, given that the first skip already match.
+     */
+    private int matchLength(String pattern, int start, int skip) {
+        int i = skip;
+        while (i < pattern.length() && start + i < text.length()
+                && pattern.charAt(i) == text.charAt(start + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Compare the pattern with the suffix at start, given that they agree on
+     * their first matched characters. Returns 0 if the suffix starts with the
+     * pattern.
+     */
+    private int compareAt(String pattern, int start, int matched) {
+        if (matched == pattern.length()) {
+            return 0;
+        }
+        if (start + matched == text.length()) {
+            return 1; // Suffix is a proper prefix of the pattern
+        }
+        return Character.compare(pattern.charAt(matched), text.charAt(start + matched));
+    }
+
+    /**
+     * Write the suffix and LCP arrays to a file, so they can later be mapped
+     * with load instead of being rebuilt.
+     */
+    public void save(Path file) throws IOException {
+        int n = length();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(n);
+            for (int j = 0; j < n; j++) {
+                out.writeInt(suffixes.get(j));
+            }
+            for (int j = 0; j < n; j++) {
+                out.writeInt(lcp.get(j));
+            }
+        }
+    }
+
+    /**
+     * Memory-map an index written by save. The text must be the one the index
+     * was built from.
+     */
+    public static SuffixArray load(Path file, String text) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.BIG_ENDIAN); // As written by DataOutputStream
+
+            if (channel.size() < 8 || mapped.getInt(0) != FILE_MAGIC) {
+                throw new IOException("Not a suffix array file: " + file);
+            }
+            int n = mapped.getInt(4);
+            if (n != text.length()) {
+                throw new IOException("Suffix array in " + file + " is for a text of length " + n
+                                      + ", not " + text.length());
+            }
+            if (channel.size() < 8 + 8L * n) {
+                throw new IOException("Suffix array file " + file + " is truncated");
+            }
+
+            mapped.position(8);
+            IntBuffer ints = mapped.asIntBuffer();
+            IntBuffer suffixes = ints.duplicate();
+            suffixes.limit(n);
+            IntBuffer lcp = ints.duplicate();
+            lcp.position(n);
+            lcp.limit(2 * n);
+            return new SuffixArray(text, suffixes.slice(), lcp.slice());
+        }
+    }
+
+    /**
+     * Searches a fixed text, using plain KMP scans for the first few queries
+     * and building a suffix array only once enough queries have been made for
+     * the index to pay for itself.
+     */
+    public static class Searcher {
+        // Queries answered with KMP before the index is built
+        static final int INDEX_AFTER_QUERIES = 16;
+
+        private final String text;
+        private int queries;
+        private SuffixArray index;
+
+        public Searcher(String text) {
+            this.text = text;
+        }
+
+        public int search(String pattern) {
+            KMP.checkPattern(pattern.length());
+            SuffixArray index = index();
+            return index == null ? KMP.search(text, pattern) : index.first(pattern);
+        }
+
+        public int[] searchAll(String pattern) {
+            KMP.checkPattern(pattern.length());
+            SuffixArray index = index();
+            return index == null ? KMP.searchAll(text, pattern) : index.searchAll(pattern);
+        }
+
+        private SuffixArray index() {
+            if (index == null && ++queries > INDEX_AFTER_QUERIES) {
+                index = build(text);
+            }
+            return index;
+        }
+    }
+}